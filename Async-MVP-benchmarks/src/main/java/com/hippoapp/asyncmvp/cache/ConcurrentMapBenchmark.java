@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Get and put under contention of maps made by {@link MapMaker} against
+ * {@link ConcurrentHashMap}. MapMaker builds CustomConcurrentHashMap only for
+ * soft values or expiration, without them it returns ConcurrentHashMap
+ * itself. {@link SoftMemoryCache} uses both.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentMapBenchmark {
+
+	private static final int KEY_COUNT = 4096;
+
+	@Param({ "ConcurrentHashMap", "softValues", "expiration", "softValuesExpiration" })
+	public String implementation;
+
+	@Param({ "4", "16" })
+	public int concurrencyLevel;
+
+	private ConcurrentMap<String, Object> mMap;
+	private final String[] mKeys = new String[KEY_COUNT];
+	private final Object mValue = new Object();
+
+	@Setup
+	public void setUp() {
+		if ("ConcurrentHashMap".equals(implementation)) {
+			mMap = new ConcurrentHashMap<String, Object>(KEY_COUNT * 2, 0.75f, concurrencyLevel);
+		} else {
+			MapMaker mapMaker = new MapMaker();
+			mapMaker.initialCapacity(KEY_COUNT * 2);
+			mapMaker.concurrencyLevel(concurrencyLevel);
+			if (implementation.startsWith("softValues")) {
+				mapMaker.softValues();
+			}
+			if (implementation.endsWith("xpiration")) {
+				mapMaker.expiration(1, TimeUnit.HOURS);
+			}
+			mMap = mapMaker.makeMap();
+		}
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			mKeys[i] = "http://example.com/api/item?id=" + i;
+			mMap.put(mKeys[i], mValue);
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object get(KeySequence keys) {
+		return mMap.get(mKeys[keys.next()]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object put(KeySequence keys) {
+		return mMap.put(mKeys[keys.next()], mValue);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(3)
+	public Object mixedGet(KeySequence keys) {
+		return mMap.get(mKeys[keys.next()]);
+	}
+
+	@Benchmark
+	@Group("mixed")
+	@GroupThreads(1)
+	public Object mixedPut(KeySequence keys) {
+		return mMap.put(mKeys[keys.next()], mValue);
+	}
+
+	/**
+	 * Pseudo random key indexes of one benchmark thread
+	 */
+	@State(Scope.Thread)
+	public static class KeySequence {
+		private int mSeed = (int) System.nanoTime() | 1;
+
+		int next() {
+			// xorshift
+			mSeed ^= mSeed << 13;
+			mSeed ^= mSeed >>> 17;
+			mSeed ^= mSeed << 5;
+			return mSeed & (KEY_COUNT - 1);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Disk hit latency of {@link AsyncCacheStorage} by payload size: file with
+ * the same header and {@link BytesSerializer} content as blob file of disk
+ * tier is read into heap array or memory mapped, header is checked and value
+ * is decoded. "auto" chooses the way as disk tier does, by
+ * {@link CacheFile#MAPPED_READ_THRESHOLD}. File is in page cache after the
+ * first read, so the benchmark measures read path, not the storage device.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiskReadBenchmark {
+
+	@Param({ "heap", "mapped", "auto" })
+	public String read;
+
+	@Param({ "256", "16384", "1048576" })
+	public int payloadSize;
+
+	private final CacheSerializer<byte[]> mSerializer = new BytesSerializer();
+	private File mFile;
+
+	@Setup
+	public void setUp() throws IOException {
+		mFile = File.createTempFile("disk-read", ".cache");
+		byte[] payload = new byte[payloadSize];
+		for (int i = 0; i < payload.length; ++i) {
+			payload[i] = (byte) i;
+		}
+		DataOutputStream ostream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile)));
+		try {
+			CacheFile.writeHeader(ostream, mSerializer);
+			mSerializer.write(payload, ostream);
+		} finally {
+			ostream.close();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		mFile.delete();
+	}
+
+	@Benchmark
+	public byte[] diskHit() throws IOException {
+		ByteBuffer buffer;
+		if ("heap".equals(read)) {
+			buffer = ByteBuffer.wrap(CacheFile.readFile(mFile));
+		} else if ("mapped".equals(read)) {
+			buffer = CacheFile.mapFile(mFile);
+		} else {
+			buffer = CacheFile.open(mFile);
+		}
+		if (CacheFile.checkHeader(buffer, mSerializer) != CacheFile.HEADER_VALID) {
+			throw new IllegalStateException("Bad header of " + mFile);
+		}
+		return mSerializer.read(buffer.slice());
+	}
+}
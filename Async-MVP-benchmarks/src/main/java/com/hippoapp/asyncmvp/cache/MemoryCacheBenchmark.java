@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Memory hit and put latency of in-memory tier of {@link AsyncCacheStorage}
+ * by payload size: soft values mode against memory budget mode. Disk hits
+ * are measured by {@link DiskReadBenchmark}.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryCacheBenchmark {
+
+	private static final int KEY_COUNT = 1024;
+
+	private static final int EXPIRATION_IN_MINUTES = 60;
+
+	@Param({ "soft", "budgeted" })
+	public String mode;
+
+	@Param({ "4", "16" })
+	public int maxConcurrentThreads;
+
+	@Param({ "256", "16384" })
+	public int payloadSize;
+
+	private MemoryCache mCache;
+	private final String[] mKeys = new String[KEY_COUNT];
+	private byte[] mPayload;
+
+	@Setup
+	public void setUp() {
+		if ("soft".equals(mode)) {
+			mCache = new SoftMemoryCache(KEY_COUNT * 2, EXPIRATION_IN_MINUTES, maxConcurrentThreads);
+		} else {
+			// every value fits, so puts don't evict
+			mCache = new BudgetedMemoryCache((long) KEY_COUNT * payloadSize * 2, EXPIRATION_IN_MINUTES * 60L * 1000L,
+					maxConcurrentThreads);
+		}
+		mPayload = new byte[payloadSize];
+		for (int i = 0; i < KEY_COUNT; ++i) {
+			mKeys[i] = "http://example.com/api/item?id=" + i;
+			mCache.put(mKeys[i], mPayload, payloadSize);
+		}
+	}
+
+	@Benchmark
+	@Threads(4)
+	public Object getHit(ConcurrentMapBenchmark.KeySequence keys) {
+		return mCache.get(mKeys[keys.next() & (KEY_COUNT - 1)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void put(ConcurrentMapBenchmark.KeySequence keys) {
+		mCache.put(mKeys[keys.next() & (KEY_COUNT - 1)], mPayload, payloadSize);
+	}
+}
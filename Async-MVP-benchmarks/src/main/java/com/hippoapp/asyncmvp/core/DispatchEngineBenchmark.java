@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of model message fan-out: one sender sends a batch of messages
+ * to every layer and waits until all layers handled it. This is the path of
+ * <code>Presenter.sendModelMessage</code> on pure java backend, Looper backend
+ * and View-components need a device.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchEngineBenchmark {
+
+	private static final int BATCH = 1000;
+
+	private static final int PROTOCOL = 1;
+
+	@Param({ "1", "4", "16" })
+	public int layerCount;
+
+	/**
+	 * 0 means unbounded inbox, otherwise inbox is bounded with
+	 * {@link OverflowPolicy#BLOCK}
+	 */
+	@Param({ "0", "64" })
+	public int inboxBound;
+
+	@Param({ "false", "true" })
+	public boolean isTraced;
+
+	private DispatchEngine mEngine;
+	private ExecutorService[] mExecutors;
+	private CountingTarget[] mTargets;
+	private long mSentCount;
+
+	@Setup
+	public void setUp() {
+		mEngine = new DispatchEngine(new DispatchEngine.Listener() {
+			@Override
+			public void onSaturationChanged(int name, boolean isSaturated) {
+			}
+
+			@Override
+			public void onDeadlineMiss(int name, int what, long lateness) {
+			}
+		});
+		mExecutors = new ExecutorService[layerCount];
+		mTargets = new CountingTarget[layerCount];
+		for (int i = 0; i < layerCount; ++i) {
+			int name = i + 1;
+			mExecutors[i] = DispatchEngine.newLayerExecutor("layer-" + name);
+			mTargets[i] = new CountingTarget();
+			mEngine.addLayer(name, mExecutors[i], mTargets[i]);
+			if (inboxBound > 0) {
+				mEngine.setBound(name, inboxBound, OverflowPolicy.BLOCK);
+			}
+		}
+		if (isTraced) {
+			mEngine.setTracer(new MessageTracer(4096));
+		}
+		mSentCount = 0;
+	}
+
+	@TearDown
+	public void tearDown() {
+		mEngine.close();
+		for (ExecutorService executor : mExecutors) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public void fanOut() {
+		for (int i = 0; i < BATCH; ++i) {
+			mEngine.send(PROTOCOL, i, 0, null, null, Priority.NORMAL, 0);
+		}
+		mSentCount += BATCH;
+		for (CountingTarget target : mTargets) {
+			while (target.mHandledCount < mSentCount) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Counter is written by layer thread only, so it needs no atomic update
+	 */
+	private static final class CountingTarget implements DispatchEngine.Target {
+		volatile long mHandledCount;
+
+		@Override
+		public void dispatch(int what, int arg1, int arg2, Object obj, Object data) {
+			mHandledCount = mHandledCount + 1;
+		}
+	}
+}
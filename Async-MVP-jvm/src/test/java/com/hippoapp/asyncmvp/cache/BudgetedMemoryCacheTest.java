@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Budget, eviction order and expiration of {@link BudgetedMemoryCache}.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class BudgetedMemoryCacheTest {
+
+	private static final Object VALUE = new Object();
+
+	@Test
+	public void totalWeightNeverExceedsBudget() {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(1600, 0, 16);
+		for (int i = 0; i < 1000; ++i) {
+			cache.put("key" + i, VALUE, 100);
+			assertTrue(cache.weightedSize() <= 1600);
+		}
+		// heavier than part of one segment
+		cache.put("big", VALUE, 101);
+		assertNull(cache.get("big"));
+		assertTrue(cache.weightedSize() <= 1600);
+	}
+
+	@Test
+	public void valueHeavierThanBudgetIsNotKept() {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(100, 0, 1);
+		cache.put("small", VALUE, 10);
+		cache.put("big", VALUE, 101);
+
+		assertNull(cache.get("big"));
+		assertNotNull(cache.get("small"));
+		assertEquals(10, cache.weightedSize());
+	}
+
+	@Test
+	public void leastRecentlyUsedValueIsEvicted() {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(100, 0, 1);
+		cache.put("a", VALUE, 40);
+		cache.put("b", VALUE, 40);
+		// "a" becomes most recent
+		cache.get("a");
+		cache.put("c", VALUE, 40);
+
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertEquals(80, cache.weightedSize());
+	}
+
+	@Test
+	public void replacedValueIsReweighed() {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(100, 0, 1);
+		cache.put("a", VALUE, 40);
+		cache.put("a", VALUE, 70);
+
+		assertEquals(1, cache.size());
+		assertEquals(70, cache.weightedSize());
+	}
+
+	@Test
+	public void expiredValueIsRemoved() throws Exception {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(100, 50, 1);
+		cache.put("a", VALUE, 40);
+		assertNotNull(cache.get("a"));
+
+		Thread.sleep(100);
+
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.weightedSize());
+	}
+
+	@Test
+	public void trimRemovesOldestValues() {
+		BudgetedMemoryCache cache = new BudgetedMemoryCache(100, 0, 1);
+		for (int i = 0; i < 4; ++i) {
+			cache.put("key" + i, VALUE, 25);
+		}
+
+		cache.trim(50);
+
+		assertEquals(50, cache.weightedSize());
+		assertNull(cache.get("key0"));
+		assertNull(cache.get("key1"));
+		assertNotNull(cache.get("key2"));
+		assertNotNull(cache.get("key3"));
+
+		cache.trim(100);
+		assertEquals(0, cache.size());
+	}
+}
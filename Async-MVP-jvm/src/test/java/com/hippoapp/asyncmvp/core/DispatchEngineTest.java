@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Message routing of {@link DispatchEngine} on pure java backend.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class DispatchEngineTest {
+
+	private static final long TIMEOUT_IN_SECONDS = 5;
+
+	private static final int PROTOCOL_GATE = 1;
+	private static final int PROTOCOL_WORK = 2;
+
+	private final RecordingListener mListener = new RecordingListener();
+	private final DispatchEngine mEngine = new DispatchEngine(mListener);
+	private final List<ExecutorService> mExecutors = new ArrayList<ExecutorService>();
+
+	@After
+	public void tearDown() {
+		mEngine.close();
+		for (ExecutorService executor : mExecutors) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void sendDeliversToEveryLayerInOrder() throws Exception {
+		RecordingTarget first = addLayer(10);
+		RecordingTarget second = addLayer(20);
+
+		for (int i = 0; i < 100; ++i) {
+			mEngine.send(PROTOCOL_WORK, i, 0, null, null, Priority.NORMAL, 0);
+		}
+
+		assertEquals(range(100), first.awaitArgs(100));
+		assertEquals(range(100), second.awaitArgs(100));
+	}
+
+	@Test
+	public void sendExceptSkipsLayer() throws Exception {
+		RecordingTarget sender = addLayer(10);
+		RecordingTarget other = addLayer(20);
+
+		mEngine.sendExcept(10, PROTOCOL_WORK, 1, 0, null, null, Priority.NORMAL);
+		mEngine.send(PROTOCOL_WORK, 2, 0, null, null, Priority.NORMAL, 0);
+
+		assertEquals(Arrays.asList(1, 2), other.awaitArgs(2));
+		assertEquals(Arrays.asList(2), sender.awaitArgs(1));
+	}
+
+	@Test
+	public void urgentMessageJumpsAheadOfQueued() throws Exception {
+		RecordingTarget target = addLayer(10);
+		mEngine.send(PROTOCOL_GATE, 0, 0, null, null, Priority.NORMAL, 0);
+		target.awaitGateEntered();
+
+		mEngine.send(PROTOCOL_WORK, 1, 0, null, null, Priority.LOW, 0);
+		mEngine.send(PROTOCOL_WORK, 2, 0, null, null, Priority.NORMAL, 0);
+		mEngine.send(PROTOCOL_WORK, 3, 0, null, null, Priority.URGENT, 0);
+		target.openGate();
+
+		assertEquals(Arrays.asList(3, 2, 1), target.awaitArgs(3));
+	}
+
+	@Test
+	public void boundedInboxDropsNewestAndReportsSaturation() throws Exception {
+		RecordingTarget target = addLayer(10);
+		mEngine.setBound(10, 2, OverflowPolicy.DROP_NEWEST);
+		mEngine.send(PROTOCOL_GATE, 0, 0, null, null, Priority.NORMAL, 0);
+		target.awaitGateEntered();
+
+		for (int i = 0; i < 5; ++i) {
+			mEngine.send(PROTOCOL_WORK, i, 0, null, null, Priority.NORMAL, 0);
+		}
+		target.openGate();
+
+		assertEquals(Arrays.asList(0, 1), target.awaitArgs(2));
+		assertEquals(3, mEngine.getStatus(10).getDroppedCount());
+		assertTrue(mListener.awaitSaturation(10, true));
+		assertTrue(mListener.awaitSaturation(10, false));
+	}
+
+	@Test
+	public void coalesceReplacesQueuedPayload() throws Exception {
+		RecordingTarget target = addLayer(10);
+		mEngine.setBound(10, 4, OverflowPolicy.COALESCE);
+		mEngine.send(PROTOCOL_GATE, 0, 0, null, null, Priority.NORMAL, 0);
+		target.awaitGateEntered();
+
+		mEngine.send(PROTOCOL_WORK, 7, 1, null, null, Priority.NORMAL, 0);
+		mEngine.send(PROTOCOL_WORK, 7, 2, null, null, Priority.NORMAL, 0);
+		target.openGate();
+
+		target.awaitArgs(1);
+		assertEquals(Arrays.asList(2), target.arg2s());
+		assertEquals(1, mEngine.getStatus(10).getCoalescedCount());
+	}
+
+	@Test
+	public void lateMessageIsDroppedByDeadline() throws Exception {
+		RecordingTarget target = addLayer(10);
+		mEngine.send(PROTOCOL_GATE, 0, 0, null, null, Priority.NORMAL, 0);
+		target.awaitGateEntered();
+
+		mEngine.send(PROTOCOL_WORK, 1, 0, null, null, Priority.NORMAL, 1);
+		mEngine.send(PROTOCOL_WORK, 2, 0, null, null, Priority.NORMAL, 0);
+		Thread.sleep(20);
+		target.openGate();
+
+		assertEquals(Arrays.asList(2), target.awaitArgs(1));
+		assertEquals(1, mEngine.getStatus(10).getDeadlineMissCount());
+		assertEquals(1, mListener.mDeadlineMisses.get());
+	}
+
+	@Test
+	public void layerSendingToItselfDoesNotBlockOnFullInbox() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		mEngine.addLayer(10, newExecutor(10), new DispatchEngine.Target() {
+			@Override
+			public void dispatch(int what, int arg1, int arg2, Object obj, Object data) {
+				if (arg1 < 10) {
+					mEngine.send(what, arg1 + 1, 0, null, null, Priority.NORMAL, 0);
+				} else {
+					done.countDown();
+				}
+			}
+		});
+		mEngine.setBound(10, 1, OverflowPolicy.BLOCK);
+
+		mEngine.send(PROTOCOL_WORK, 0, 0, null, null, Priority.NORMAL, 0);
+
+		assertTrue(done.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void noticeToFullBlockingInboxIsDropped() throws Exception {
+		RecordingTarget target = addLayer(10);
+		mEngine.setBound(10, 1, OverflowPolicy.BLOCK);
+		mEngine.send(PROTOCOL_GATE, 0, 0, null, null, Priority.NORMAL, 0);
+		target.awaitGateEntered();
+		mEngine.send(PROTOCOL_WORK, 1, 0, null, null, Priority.NORMAL, 0);
+
+		// must return at once although inbox is full
+		mEngine.sendExcept(20, PROTOCOL_WORK, 2, 0, null, null, Priority.URGENT);
+		target.openGate();
+
+		assertEquals(Arrays.asList(1), target.awaitArgs(1));
+		assertEquals(1, mEngine.getStatus(10).getDroppedCount());
+	}
+
+	@Test
+	public void unknownLayerHasNoStatus() {
+		addLayer(10);
+		assertNull(mEngine.getStatus(42));
+		assertNotNull(mEngine.getStatus(10));
+	}
+
+	private RecordingTarget addLayer(int name) {
+		RecordingTarget target = new RecordingTarget();
+		mEngine.addLayer(name, newExecutor(name), target);
+		return target;
+	}
+
+	private ExecutorService newExecutor(int name) {
+		ExecutorService executor = DispatchEngine.newLayerExecutor("layer-" + name);
+		mExecutors.add(executor);
+		return executor;
+	}
+
+	private static List<Integer> range(int count) {
+		List<Integer> list = new ArrayList<Integer>(count);
+		for (int i = 0; i < count; ++i) {
+			list.add(i);
+		}
+		return list;
+	}
+
+	/**
+	 * Records arg1 of work messages. Gate message holds layer thread until
+	 * {@link #openGate()}, so test can fill inbox.
+	 */
+	private static final class RecordingTarget implements DispatchEngine.Target {
+		private final List<Integer> mArgs = Collections.synchronizedList(new ArrayList<Integer>());
+		private final List<Integer> mArg2s = Collections.synchronizedList(new ArrayList<Integer>());
+		private final CountDownLatch mGateEntered = new CountDownLatch(1);
+		private final CountDownLatch mGate = new CountDownLatch(1);
+
+		@Override
+		public void dispatch(int what, int arg1, int arg2, Object obj, Object data) {
+			if (what == PROTOCOL_GATE) {
+				mGateEntered.countDown();
+				try {
+					mGate.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return;
+			}
+			mArg2s.add(arg2);
+			mArgs.add(arg1);
+		}
+
+		void awaitGateEntered() throws InterruptedException {
+			assertTrue(mGateEntered.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS));
+		}
+
+		void openGate() {
+			mGate.countDown();
+		}
+
+		List<Integer> awaitArgs(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_IN_SECONDS);
+			while (mArgs.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			// give engine a chance to deliver unexpected extra messages
+			Thread.sleep(20);
+			synchronized (mArgs) {
+				return new ArrayList<Integer>(mArgs);
+			}
+		}
+
+		List<Integer> arg2s() {
+			synchronized (mArg2s) {
+				return new ArrayList<Integer>(mArg2s);
+			}
+		}
+	}
+
+	private static final class RecordingListener implements DispatchEngine.Listener {
+		private final List<String> mSaturationChanges = Collections.synchronizedList(new ArrayList<String>());
+		final AtomicInteger mDeadlineMisses = new AtomicInteger();
+
+		@Override
+		public void onSaturationChanged(int name, boolean isSaturated) {
+			mSaturationChanges.add(name + ":" + isSaturated);
+		}
+
+		@Override
+		public void onDeadlineMiss(int name, int what, long lateness) {
+			mDeadlineMisses.incrementAndGet();
+		}
+
+		boolean awaitSaturation(int name, boolean isSaturated) {
+			long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_IN_SECONDS);
+			String change = name + ":" + isSaturated;
+			do {
+				if (mSaturationChanges.contains(change)) {
+					return true;
+				}
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			} while (System.currentTimeMillis() < deadline);
+			return false;
+		}
+	}
+}
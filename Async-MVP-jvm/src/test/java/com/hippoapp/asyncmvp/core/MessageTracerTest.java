@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Histograms and trace export of {@link MessageTracer}.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class MessageTracerTest {
+
+	private static final long MICROSECOND = 1000;
+
+	@Test(expected = IllegalArgumentException.class)
+	public void zeroCapacityIsRejected() {
+		new MessageTracer(0);
+	}
+
+	@Test
+	public void latenciesAreKeptPerLayerAndProtocol() {
+		MessageTracer tracer = new MessageTracer(4);
+		// many protocols, so latency table grows
+		for (int what = 0; what < 100; ++what) {
+			tracer.record(0, 10, what, 0, 0, 0);
+			tracer.record(1, 20, what, 0, 0, 0);
+		}
+		tracer.record(0, 10, 5, 0, 3 * MICROSECOND, 3 * MICROSECOND);
+
+		List<MessageTracer.Latency> latencies = tracer.getLatencies();
+		assertEquals(200, latencies.size());
+		for (MessageTracer.Latency latency : latencies) {
+			long[] wait = latency.getWaitHistogram();
+			if (latency.getLayer() == 10 && latency.getProtocol() == 5) {
+				assertEquals(1, wait[0]);
+				assertEquals(1, wait[2]);
+			} else {
+				long[] expected = new long[MessageTracer.HISTOGRAM_BUCKETS];
+				expected[0] = 1;
+				assertArrayEquals(expected, wait);
+			}
+		}
+
+		tracer.clear();
+		assertTrue(tracer.getLatencies().isEmpty());
+	}
+
+	@Test
+	public void layersWithoutNameAreDifferentTraceThreads() throws Exception {
+		MessageTracer tracer = new MessageTracer(4);
+		tracer.record(0, 0, 1, 0, 0, 0);
+		tracer.record(1, 0, 1, 0, 0, 0);
+
+		StringWriter writer = new StringWriter();
+		tracer.writeChromeTrace(writer);
+
+		String trace = writer.toString();
+		assertTrue(trace, trace.contains("\"tid\":1,"));
+		assertTrue(trace, trace.contains("\"tid\":2,"));
+		assertEquals(2, tracer.getLatencies().size());
+	}
+}
@@ -19,13 +19,22 @@
 package com.hippoapp.asyncmvp.cache;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.Application;
 import android.content.Context;
+import android.os.Message;
 import android.os.Parcelable;
 
+import com.hippoapp.asyncmvp.core.AsyncApplication;
+import com.hippoapp.asyncmvp.core.Presenter;
+
 /**
  * Cache client which delegate actions like put, get and remove to defined
  * {@link AsyncCacheStorage} according asyncMVP protocol.
@@ -53,6 +62,9 @@ import android.os.Parcelable;
  * <b>Note:</b> if sdcard is not mounted disk cache will not be activated and
  * {@link #initCacheInstance(int, int, int, int, int, int)} will throw an
  * {@link IOException}
+ * <li>if you need in-memory cache limited by memory budget instead of soft
+ * values use {@link #initBudgetedCacheInstance(int, long, int, int)} or
+ * {@link #initBudgetedCacheInstance(int, long, int, int, int, int)}
  * </ul>
  *
  * Special directory for each protocol is defined. The path of
@@ -62,6 +74,18 @@ import android.os.Parcelable;
  * /{application_package_name}/cache/{protocol}. In low-level directory for each
  * key create separate file.
  * <p>
+ * Values are written to disk by {@link CacheSerializer} of protocol, see
+ * {@link #setSerializer(int, CacheSerializer)}.
+ * <p>
+ * When application extends {@link AsyncApplication} each storage is notified
+ * about low memory automatically. Storage sheds part of in-memory values and
+ * never removes disk cache because of low memory.
+ * <p>
+ * Disk caches may be limited by byte quota per protocol,
+ * {@link #setDiskQuota(int, long)}, and across all protocols,
+ * {@link #setDiskQuota(long)}. Freed space is reported by
+ * {@link #getStats(int)}.
+ * <p>
  * To make available {@link #EXTERNAL_CACHE}, you must declare the
  * {@link android.Manifest.permission#WRITE_EXTERNAL_STORAGE} permission in your
  * Android Manifest.
@@ -76,7 +100,8 @@ public class AsyncCacheClient {
 
 	private static AsyncCacheClient sAsyncCacheClient;
 
-	private final HashMap<Integer, AsyncCacheStorage> protocolCacheInstanceMap = new HashMap<Integer, AsyncCacheStorage>();
+	private final ProtocolStorageTable protocolCacheInstanceMap = new ProtocolStorageTable();
+	private final DiskQuota mDiskQuota = new DiskQuota(protocolCacheInstanceMap);
 	private Context mContext;
 
 	private AsyncCacheClient(Context context) {
@@ -145,7 +170,7 @@ public class AsyncCacheClient {
 					inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads, diskCacheExpirationInMinutes,
 					diskCacheType);
 
-			protocolCacheInstanceMap.put(protocol, asyncCacheStorage);
+			register(protocol, asyncCacheStorage);
 		}
 	}
 
@@ -170,10 +195,153 @@ public class AsyncCacheClient {
 			AsyncCacheStorage asyncCacheStorage = new AsyncCacheStorage(inMemoryCacheInitialCapacity,
 					inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads);
 
-			protocolCacheInstanceMap.put(protocol, asyncCacheStorage);
+			register(protocol, asyncCacheStorage);
 		}
 	}
 
+	/**
+	 * Initialize concrete {@link AsyncCacheStorage} with in-memory cache
+	 * limited by memory budget and disk cache. Values are weighed by payload
+	 * size and least recently used values are evicted when budget is exceeded.
+	 *
+	 * @param protocol
+	 *            - for creating disk cache directory. It is preferable to use
+	 *            protocol of AsyncMVP.
+	 * @param inMemoryCacheBudgetInBytes
+	 *            - maximum total size of values in in-memory cache, see
+	 *            {@link AsyncCacheStorage#budgetFromMaxHeap(float)}
+	 * @param inMemoryCacheExpirationInMinutes
+	 *            - cache values live time (explanation: values will be
+	 *            truncated after this amount of time)
+	 * @param inMemoryCacheMaxConcurrentThreads
+	 *            - maximum amount of concurrent threads (explanation: when we
+	 *            accessing cache storage asynchronously from different threads)
+	 * @param diskCacheExpirationInMinutes
+	 *            - external cache values live time (explanation: values will be
+	 *            truncated after this amount of time)
+	 * @param diskCacheType
+	 *            - type of cache: {@link #INTERNAL_CACHE},
+	 *            {@link #EXTERNAL_CACHE}
+	 *
+	 * @throws IOException
+	 *             if sd card not mounted
+	 */
+	public void initBudgetedCacheInstance(int protocol, long inMemoryCacheBudgetInBytes,
+			int inMemoryCacheExpirationInMinutes, int inMemoryCacheMaxConcurrentThreads, int diskCacheExpirationInMinutes,
+			int diskCacheType) throws IOException {
+		if (protocolCacheInstanceMap.get(protocol) == null) {
+			AsyncCacheStorage asyncCacheStorage = new AsyncCacheStorage(mContext, protocol, inMemoryCacheBudgetInBytes,
+					inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads, diskCacheExpirationInMinutes,
+					diskCacheType);
+
+			register(protocol, asyncCacheStorage);
+		}
+	}
+
+	/**
+	 * Initialize concrete {@link AsyncCacheStorage} with in-memory cache
+	 * limited by memory budget.
+	 *
+	 * @param protocol
+	 *            - protocol of AsyncMVP.
+	 * @param inMemoryCacheBudgetInBytes
+	 *            - maximum total size of values in in-memory cache, see
+	 *            {@link AsyncCacheStorage#budgetFromMaxHeap(float)}
+	 * @param inMemoryCacheExpirationInMinutes
+	 *            - in-memory cache values live time (explanation: values will
+	 *            be truncated after this amount of time)
+	 * @param inMemoryCacheMaxConcurrentThreads
+	 *            - maximum amount of concurrent threads (explanation: when we
+	 *            accessing cache storage asynchronously from different threads)
+	 */
+	public void initBudgetedCacheInstance(int protocol, long inMemoryCacheBudgetInBytes,
+			int inMemoryCacheExpirationInMinutes, int inMemoryCacheMaxConcurrentThreads) {
+		if (protocolCacheInstanceMap.get(protocol) == null) {
+			AsyncCacheStorage asyncCacheStorage = new AsyncCacheStorage(inMemoryCacheBudgetInBytes,
+					inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads);
+
+			register(protocol, asyncCacheStorage);
+		}
+	}
+
+	/**
+	 * Limit size of disk cache defined by protocol. When quota is exceeded
+	 * least recently accessed files are removed on background thread.
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param quotaInBytes
+	 *            maximum size of disk cache, 0 means unlimited
+	 */
+	public void setDiskQuota(int protocol, long quotaInBytes) {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		asyncCacheStorage.setDiskQuota(quotaInBytes);
+	}
+
+	/**
+	 * Limit total size of disk caches of all protocols. When quota is exceeded
+	 * least recently accessed files of all protocols are removed on
+	 * background thread.
+	 *
+	 * @param quotaInBytes
+	 *            maximum size of all disk caches, 0 means unlimited
+	 */
+	public void setDiskQuota(long quotaInBytes) {
+		mDiskQuota.setQuota(quotaInBytes);
+	}
+
+	/**
+	 * Returns hit, miss and eviction counters of cache defined by protocol
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @return snapshot of counters
+	 */
+	public CacheStats getStats(int protocol) {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		return asyncCacheStorage.getStats();
+	}
+
+	/**
+	 * Prefetch hottest values of previous application run into memory of all
+	 * initialized caches. Does nothing if {@link AsyncCacheClient} is not
+	 * created. {@link AsyncApplication} calls it after all
+	 * {@link AsyncApplication.OnInitInstance} are initialized.
+	 */
+	public static void warmUp() {
+		AsyncCacheClient client = sAsyncCacheClient;
+		if (client == null) {
+			return;
+		}
+		for (AsyncCacheStorage storage : client.protocolCacheInstanceMap.values()) {
+			storage.warmUp();
+		}
+	}
+
+	/**
+	 * Save hottest keys of all initialized caches to disk, so they are
+	 * prefetched by {@link #warmUp()} after application restart.
+	 */
+	public void saveHotKeys() {
+		for (AsyncCacheStorage storage : protocolCacheInstanceMap.values()) {
+			storage.saveHotKeys();
+		}
+	}
+
+	/**
+	 * Set serializer which writes values of cache defined by protocol to disk
+	 * and reads them back. By default {@link ParcelableSerializer} is used.
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param serializer
+	 *            serializer which accepts all values of protocol
+	 */
+	public void setSerializer(int protocol, CacheSerializer<? extends Parcelable> serializer) {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		asyncCacheStorage.setSerializer(serializer);
+	}
+
 	/**
 	 * Associates the specified value with the specified key in cache defined by
 	 * protocol. If the cache previously contained a caching for the key, the
@@ -212,7 +380,7 @@ public class AsyncCacheClient {
 	 * Copies all of the mappings from the specified map to cache defined by
 	 * protocol. The effect of this call is equivalent to that of calling
 	 * {@link #put(int, String, Parcelable)} on this cache for each mapping
-	 * key-value.
+	 * key-value, but disk files are written in parallel.
 	 *
 	 * @param protocol
 	 *            define which {@link AsyncCacheStorage} to use
@@ -240,6 +408,77 @@ public class AsyncCacheClient {
 		return asyncCacheStorage.get(key);
 	}
 
+	/**
+	 * Returns values to which the specified keys are mapped in cache defined
+	 * by protocol. In-memory values are resolved first, then disk misses are
+	 * read in parallel.
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param keys
+	 *            the keys whose associated values are to be returned
+	 * @return map of found keys to values, keys without values are absent
+	 */
+	public Map<String, Parcelable> getAll(int protocol, Collection<String> keys) {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		return asyncCacheStorage.getAll(keys);
+	}
+
+	/**
+	 * Asynchronous variant of {@link #getAll(int, Collection)}. Disk misses are
+	 * read in parallel on background threads and all values are sent to
+	 * Model-components with one message via
+	 * {@link Presenter#sendModelMessage(int, int, int, Object)}:
+	 * <ul>
+	 * <li>{@link Message#what} - <code>what</code>
+	 * <li>{@link Message#arg1} - <code>protocol</code>
+	 * <li>{@link Message#obj} - map of found keys to values
+	 * </ul>
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param keys
+	 *            the keys whose associated values are to be returned
+	 * @param what
+	 *            protocol of AsyncMVP message with result
+	 */
+	public void getAll(final int protocol, Collection<String> keys, final int what) {
+		final AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		final Map<String, Parcelable> result = new ConcurrentHashMap<String, Parcelable>(keys.size() * 2);
+		List<String> misses = new ArrayList<String>();
+		for (String key : keys) {
+			Parcelable value = asyncCacheStorage.getFromMemory(key);
+			if (value != null) {
+				result.put(key, value);
+			} else if (asyncCacheStorage.isDiskCacheEnabled()) {
+				misses.add(key);
+			}
+		}
+		if (misses.isEmpty()) {
+			Presenter.getInst().sendModelMessage(what, protocol, 0, result);
+			return;
+		}
+		// the last finished disk read sends the result
+		final AtomicInteger remaining = new AtomicInteger(misses.size());
+		for (final String key : misses) {
+			AsyncCacheStorage.getDiskIoExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						Parcelable value = asyncCacheStorage.getFromDisk(key);
+						if (value != null) {
+							result.put(key, value);
+						}
+					} finally {
+						if (remaining.decrementAndGet() == 0) {
+							Presenter.getInst().sendModelMessage(what, protocol, 0, result);
+						}
+					}
+				}
+			});
+		}
+	}
+
 	/**
 	 * Returns the value to which the specified key is mapped, or {@code null}
 	 * if cache defined by protocol contains no mapping for the key.
@@ -256,6 +495,41 @@ public class AsyncCacheClient {
 		return asyncCacheStorage.getArray(key);
 	}
 
+	/**
+	 * Stores binary data with the specified key in disk cache defined by
+	 * protocol. Data is not kept in in-memory cache.
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param key
+	 *            key with which the specified data is to be associated
+	 * @param data
+	 *            binary data
+	 * @throws IOException
+	 *             if disk cache is not enabled or data can't be written
+	 */
+	public void putBlob(int protocol, String key, byte[] data) throws IOException {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		asyncCacheStorage.putBlob(key, data);
+	}
+
+	/**
+	 * Returns read-only view of binary data stored by
+	 * {@link #putBlob(int, String, byte[])}, or {@code null} if cache defined by
+	 * protocol contains no data for the key. Big data is memory mapped and
+	 * isn't copied to heap.
+	 *
+	 * @param protocol
+	 *            define which {@link AsyncCacheStorage} to use
+	 * @param key
+	 *            the key whose associated data is to be returned
+	 * @return read-only buffer or {@code null}
+	 */
+	public ByteBuffer getBlob(int protocol, String key) {
+		AsyncCacheStorage asyncCacheStorage = getCacheInstance(protocol);
+		return asyncCacheStorage.getBlob(key);
+	}
+
 	/**
 	 * Removes the mapping for a key from cache defined by protocol if it is
 	 * present
@@ -281,6 +555,20 @@ public class AsyncCacheClient {
 		asyncCacheStorage.removeAll();
 	}
 
+	/**
+	 * Register storage for protocol and subscribe it to low memory
+	 * notifications of {@link AsyncApplication}
+	 */
+	private void register(int protocol, AsyncCacheStorage asyncCacheStorage) {
+		if (protocolCacheInstanceMap.putIfAbsent(protocol, asyncCacheStorage) == asyncCacheStorage) {
+			asyncCacheStorage.setGlobalDiskQuota(mDiskQuota);
+			Context applicationContext = mContext.getApplicationContext();
+			if (applicationContext instanceof AsyncApplication) {
+				((AsyncApplication) applicationContext).addOnLowMemoryListener(asyncCacheStorage);
+			}
+		}
+	}
+
 	private AsyncCacheStorage getCacheInstance(int protocol) {
 		AsyncCacheStorage asyncCacheStorage = null;
 		if ((asyncCacheStorage = protocolCacheInstanceMap.get(protocol)) == null) {
@@ -18,17 +18,28 @@
  */
 package com.hippoapp.asyncmvp.cache;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 import android.content.Context;
 import android.os.Environment;
@@ -36,7 +47,6 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.Log;
 
-import com.google.common.collect.MapMaker;
 import com.hippoapp.asyncmvp.core.AsyncApplication.OnLowMemoryListener;
 
 /**
@@ -64,6 +74,29 @@ import com.hippoapp.asyncmvp.core.AsyncApplication.OnLowMemoryListener;
  * disk caching is enabled.
  * </p>
  *
+ * <p>
+ * In-memory cache works in one of 2 modes:
+ * <ul>
+ * <li>Soft values mode. Values are kept by soft references and garbage
+ * collector decides when to evict them
+ * <li>Memory budget mode. Values are weighed by payload size and least
+ * recently used values are evicted when total weight exceeds the budget. Use
+ * {@link #budgetFromMaxHeap(float)} to define the budget as a fraction of the
+ * max heap. Values which implement {@link Sizeable} report their size,
+ * otherwise size of serialized value on disk is used. Without disk cache every
+ * value is marshalled into {@link Parcel} to count its size, implement
+ * {@link Sizeable} to avoid it. Budget is split between segments of cache,
+ * value heavier than budget divided by max concurrent threads isn't kept in
+ * memory
+ * </ul>
+ *
+ * <p>
+ * Disk cache may be limited by byte quota, see {@link #setDiskQuota(long)}.
+ * When quota is exceeded least recently accessed files are removed on
+ * background thread. Hits, misses and evictions are reported by
+ * {@link #getStats()}.
+ * </p>
+ *
  * @author Bnet.Android.Developer.Team
  *
  */
@@ -71,7 +104,76 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 
 	private static final String TAG = AsyncCacheStorage.class.getSimpleName();
 
-	private int mInMemoryInitialCacheCapacity;
+	/**
+	 * Share of in-memory values removed on each consecutive low memory
+	 * notification.
+	 */
+	private static final int[] LOW_MEMORY_TRIM_PERCENTS = { 25, 50, 100 };
+
+	/**
+	 * Low memory notifications which come within this period are counted as
+	 * consecutive.
+	 */
+	private static final long LOW_MEMORY_ESCALATION_PERIOD_IN_MILLIS = 60 * 1000;
+
+	/**
+	 * Amount of threads which read and write disk cache files in parallel for
+	 * bulk operations. Shared by all storages.
+	 */
+	private static final int DISK_IO_THREADS = 3;
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	/**
+	 * Temporary file of this age is left by killed process
+	 */
+	private static final long STALE_TEMP_FILE_AGE_IN_MILLIS = 60 * 60 * 1000;
+
+	/**
+	 * Number of next temporary file. Values of the same key may be written by
+	 * different disk threads at once, each write needs its own temporary
+	 * file.
+	 */
+	private static final AtomicLong sTempFileSequence = new AtomicLong();
+
+	private static final CacheSerializer<Parcelable[]> ARRAY_SERIALIZER = new ParcelableArraySerializer();
+	private static final CacheSerializer<byte[]> BYTES_SERIALIZER = new BytesSerializer();
+
+	private static final Pattern NON_WORD_PATTERN = Pattern.compile("\\W");
+
+	/**
+	 * File in disk cache directory which keeps hottest keys. Cache files never
+	 * start with dot because non-word characters of keys are replaced.
+	 */
+	private static final String HOT_KEYS_FILE_NAME = ".hotkeys";
+
+	/**
+	 * Amount of hottest keys which are prefetched by {@link #warmUp()}
+	 */
+	private static final int WARM_UP_SIZE = 32;
+
+	private static final long HOT_KEYS_SAVE_PERIOD_IN_MILLIS = 5 * 60 * 1000;
+
+	private static final ThreadLocal<Boolean> sIsDiskIoThread = new ThreadLocal<Boolean>();
+
+	private static final ExecutorService sDiskIoExecutor = Executors.newFixedThreadPool(DISK_IO_THREADS,
+			new ThreadFactory() {
+				private int mCount;
+
+				@Override
+				public synchronized Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(new Runnable() {
+						@Override
+						public void run() {
+							sIsDiskIoThread.set(Boolean.TRUE);
+							runnable.run();
+						}
+					}, TAG + "-io-" + (++mCount));
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
 
 	private int mDiskCacheExpirationInMinutes;
 	private int mTypeOfDiskCache;
@@ -80,7 +182,47 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 
 	private boolean isDiskCacheEnabled = false;
 
-	private ConcurrentMap<String, Object> mCache;
+	private MemoryCache mCache;
+
+	private volatile CacheSerializer<? extends Parcelable> mSerializer = new ParcelableSerializer();
+
+	private HotKeyTracker mHotKeys;
+
+	private final Runnable mSaveHotKeysTask = new Runnable() {
+		@Override
+		public void run() {
+			saveHotKeys();
+		}
+	};
+
+	private final AtomicLong mDiskSizeInBytes = new AtomicLong();
+	private volatile long mDiskQuotaInBytes;
+	private volatile DiskQuota mGlobalDiskQuota;
+	private final AtomicBoolean mIsDiskTrimScheduled = new AtomicBoolean();
+
+	/**
+	 * Last access time of files by file name, tracked only when disk quota is
+	 * enabled. Access time of files without record is time of last
+	 * modification. Record is removed with its file.
+	 */
+	private final ConcurrentHashMap<String, Long> mAccessTimes = new ConcurrentHashMap<String, Long>();
+
+	private final Runnable mTrimDiskTask = new Runnable() {
+		@Override
+		public void run() {
+			mIsDiskTrimScheduled.set(false);
+			trimDisk();
+		}
+	};
+
+	private final AtomicLong mHitCount = new AtomicLong();
+	private final AtomicLong mDiskHitCount = new AtomicLong();
+	private final AtomicLong mMissCount = new AtomicLong();
+	private final AtomicLong mEvictionCount = new AtomicLong();
+	private final AtomicLong mEvictedBytes = new AtomicLong();
+
+	private int mLowMemoryLevel;
+	private long mLastLowMemoryTime;
 
 	/**
 	 * Create new cache storage which support in-memory and disk cache storage
@@ -112,9 +254,46 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 			int inMemoryCacheExpirationInMinutes, int inMemoryMaxConcurrentThreads, int diskCacheExpirationInMinutes,
 			int typeOfDiskCache) throws IOException {
 		this.mDiskCacheExpirationInMinutes = diskCacheExpirationInMinutes;
-		this.mInMemoryInitialCacheCapacity = inMemoryInitialCacheCapacity;
 
-		initInMemoryCache(inMemoryInitialCacheCapacity, inMemoryCacheExpirationInMinutes, inMemoryMaxConcurrentThreads);
+		mCache = new SoftMemoryCache(inMemoryInitialCacheCapacity, inMemoryCacheExpirationInMinutes,
+				inMemoryMaxConcurrentThreads);
+
+		initDiskCache(context, protocol, typeOfDiskCache);
+	}
+
+	/**
+	 * Create new cache storage which support in-memory cache storage with
+	 * memory budget and disk cache storage by protocol
+	 *
+	 * @param context
+	 *            - context
+	 * @param protocol
+	 *            - for creating disk cache directory. It is preferable to use
+	 *            protocol of AsyncMVP.
+	 * @param inMemoryCacheBudgetInBytes
+	 *            - maximum total size of values in in-memory cache
+	 * @param inMemoryCacheExpirationInMinutes
+	 *            - cache values live time (explanation: values will be
+	 *            truncated after this amount of time)
+	 * @param inMemoryMaxConcurrentThreads
+	 *            - maximum amount of concurrent threads (explanation: when we
+	 *            accessing cache storage asynchronously from different threads)
+	 * @param diskCacheExpirationInMinutes
+	 *            - external cache values live time (explanation: values will be
+	 *            truncated after this amount of time)
+	 * @param typeOfDiskCache
+	 *            - - type of cache: {@link AsyncCacheClient#INTERNAL_CACHE},
+	 *            {@link AsyncCacheClient#EXTERNAL_CACHE}
+	 * @throws IOException
+	 *             - if sd card not mounted
+	 */
+	public AsyncCacheStorage(Context context, int protocol, long inMemoryCacheBudgetInBytes,
+			int inMemoryCacheExpirationInMinutes, int inMemoryMaxConcurrentThreads, int diskCacheExpirationInMinutes,
+			int typeOfDiskCache) throws IOException {
+		this.mDiskCacheExpirationInMinutes = diskCacheExpirationInMinutes;
+
+		mCache = new BudgetedMemoryCache(inMemoryCacheBudgetInBytes,
+				inMemoryCacheExpirationInMinutes * 60L * 1000L, inMemoryMaxConcurrentThreads);
 
 		initDiskCache(context, protocol, typeOfDiskCache);
 	}
@@ -134,9 +313,38 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 */
 	public AsyncCacheStorage(int inMemoryInitialCacheCapacity, int inMemoryCacheExpirationInMinutes,
 			int inMemoryMaxConcurrentThreads) {
-		mInMemoryInitialCacheCapacity = inMemoryInitialCacheCapacity;
+		mCache = new SoftMemoryCache(inMemoryInitialCacheCapacity, inMemoryCacheExpirationInMinutes,
+				inMemoryMaxConcurrentThreads);
+	}
 
-		initInMemoryCache(inMemoryInitialCacheCapacity, inMemoryCacheExpirationInMinutes, inMemoryMaxConcurrentThreads);
+	/**
+	 * Create new cache storage which support in-memory cache storage with
+	 * memory budget by protocol
+	 *
+	 * @param inMemoryCacheBudgetInBytes
+	 *            - maximum total size of values in in-memory cache
+	 * @param inMemoryCacheExpirationInMinutes
+	 *            - in-memory cache values live time (explanation: values will
+	 *            be truncated after this amount of time)
+	 * @param inMemoryCacheMaxConcurrentThreads
+	 *            - maximum amount of concurrent threads (explanation: when we
+	 *            accessing cache storage asynchronously from different threads)
+	 */
+	public AsyncCacheStorage(long inMemoryCacheBudgetInBytes, int inMemoryCacheExpirationInMinutes,
+			int inMemoryMaxConcurrentThreads) {
+		mCache = new BudgetedMemoryCache(inMemoryCacheBudgetInBytes,
+				inMemoryCacheExpirationInMinutes * 60L * 1000L, inMemoryMaxConcurrentThreads);
+	}
+
+	/**
+	 * Count memory budget as a fraction of maximum heap size of application.
+	 *
+	 * @param fraction
+	 *            - fraction of max heap, for example 0.125f
+	 * @return budget in bytes
+	 */
+	public static long budgetFromMaxHeap(float fraction) {
+		return (long) (Runtime.getRuntime().maxMemory() * fraction);
 	}
 
 	/**
@@ -149,14 +357,12 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 *            - value to be associated with the specified key
 	 */
 	public void put(String key, Parcelable value) {
+		int diskSize = -1;
 		if (isDiskCacheEnabled) {
-			cacheToDisk(key, value);
-		}
-		if (mCache.size() > mInMemoryInitialCacheCapacity) {
-			mCache.clear();
+			diskSize = cacheToDisk(key, value);
 		}
 		if (value != null) {
-			mCache.put(key, value);
+			mCache.put(key, value, weigh(value, diskSize));
 		} else {
 			Log.d(TAG, "WTF?? value is null by key: " + key);
 		}
@@ -173,14 +379,12 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 *            - values to be associated with the specified key
 	 */
 	public void put(String key, Parcelable[] values) {
+		int diskSize = -1;
 		if (isDiskCacheEnabled) {
-			cacheToDisk(key, values);
-		}
-		if (mCache.size() > mInMemoryInitialCacheCapacity) {
-			mCache.clear();
+			diskSize = cacheToDisk(key, values);
 		}
 		if (values != null) {
-			mCache.put(key, values);
+			mCache.put(key, values, weigh(values, diskSize));
 		} else {
 			Log.d(TAG, "WTF?? value is null by key: " + key);
 		}
@@ -191,14 +395,35 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 * this call is equivalent to that of calling
 	 * {@link #put(String, Parcelable)} on this cache for each mapping
 	 * key-value. If disk cache is enabled create separate file for each key.
+	 * Files are written in parallel and method returns when all of them are
+	 * written.
 	 *
 	 * @param keyValueMap
 	 *            mappings to be stored in this map
 	 */
 	public void putAll(Map<String, Parcelable> keyValueMap) {
-		for (String key : keyValueMap.keySet()) {
-			put(key, keyValueMap.get(key));
+		List<Callable<Void>> diskTasks = new ArrayList<Callable<Void>>(keyValueMap.size());
+		for (Map.Entry<String, Parcelable> entry : keyValueMap.entrySet()) {
+			final String key = entry.getKey();
+			final Parcelable value = entry.getValue();
+			if (value == null) {
+				Log.d(TAG, "WTF?? value is null by key: " + key);
+				continue;
+			}
+			if (isDiskCacheEnabled) {
+				diskTasks.add(new Callable<Void>() {
+					@Override
+					public Void call() {
+						// weigh by written file instead of marshalling again
+						mCache.put(key, value, weigh(value, cacheToDisk(key, value)));
+						return null;
+					}
+				});
+			} else {
+				mCache.put(key, value, weigh(value, -1));
+			}
 		}
+		invokeDiskTasks(diskTasks);
 	}
 
 	/**
@@ -214,31 +439,82 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	public Parcelable get(String key) {
 		Parcelable value = (Parcelable) mCache.get(key);
 		if (value != null) {
-			return value;
+			mHitCount.incrementAndGet();
+		} else {
+			value = getFromDisk(key);
 		}
-		File file = new File(mRootDir + "/" + key);
-		if (file.exists()) {
-			long ageInMinutes = countFileAgeInMinutes(file);
-			if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
-				file.delete();
-				return null;
-			}
-			try {
-				value = readValueFromDisk(file);
-			} catch (IOException e) {
-				e.printStackTrace();
-				return null;
+		if (value != null) {
+			recordAccess(key, false);
+		} else {
+			mMissCount.incrementAndGet();
+		}
+		return value;
+	}
+
+	/**
+	 * Returns values to which the specified keys are mapped. In-memory values
+	 * are resolved first, then disk misses are read in parallel. Keys without
+	 * values are absent in result.
+	 *
+	 * @param keys
+	 *            - the keys whose associated values are to be returned
+	 * @return map of found keys to values
+	 */
+	public Map<String, Parcelable> getAll(Collection<String> keys) {
+		Map<String, Parcelable> result = new HashMap<String, Parcelable>(keys.size() * 2);
+		List<String> misses = null;
+		for (String key : keys) {
+			Parcelable value = (Parcelable) mCache.get(key);
+			if (value != null) {
+				mHitCount.incrementAndGet();
+				result.put(key, value);
+				recordAccess(key, false);
+			} else if (isDiskCacheEnabled) {
+				if (misses == null) {
+					misses = new ArrayList<String>();
+				}
+				misses.add(key);
+			} else {
+				mMissCount.incrementAndGet();
 			}
+		}
+		if (misses == null) {
+			return result;
+		}
 
-			if (value == null) {
-				return null;
+		if (misses.size() == 1 || Boolean.TRUE.equals(sIsDiskIoThread.get())) {
+			// no need to go to another thread or we are already on disk thread
+			for (String key : misses) {
+				Parcelable value = getFromDisk(key);
+				if (value != null) {
+					result.put(key, value);
+					recordAccess(key, false);
+				} else {
+					mMissCount.incrementAndGet();
+				}
 			}
-			mCache.put(key, value);
+			return result;
+		}
 
-			return value;
+		List<Future<Parcelable>> futures = new ArrayList<Future<Parcelable>>(misses.size());
+		for (final String key : misses) {
+			futures.add(sDiskIoExecutor.submit(new Callable<Parcelable>() {
+				@Override
+				public Parcelable call() {
+					return getFromDisk(key);
+				}
+			}));
 		}
-		// cache miss
-		return null;
+		for (int i = 0; i < futures.size(); ++i) {
+			Parcelable value = waitFor(futures.get(i));
+			if (value != null) {
+				result.put(misses.get(i), value);
+				recordAccess(misses.get(i), false);
+			} else {
+				mMissCount.incrementAndGet();
+			}
+		}
+		return result;
 	}
 
 	/**
@@ -254,36 +530,93 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	public Parcelable[] getArray(String key) {
 		Parcelable[] value = (Parcelable[]) mCache.get(key);
 		if (value != null) {
-			return value;
+			mHitCount.incrementAndGet();
+		} else {
+			value = getArrayFromDisk(key);
 		}
+		if (value != null) {
+			recordAccess(key, true);
+		} else {
+			mMissCount.incrementAndGet();
+		}
+		return value;
+	}
 
-		File file = new File(mRootDir + "/" + key);
-		if (file.exists()) {
-			long ageInMinutes = countFileAgeInMinutes(file);
-
-			if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
-				file.delete();
-				return null;
-			}
-
-			try {
-				value = readValuesFromDisk(file);
-			} catch (IOException e) {
-				e.printStackTrace();
-				return null;
-			}
-
-			if (value == null) {
-				return null;
-			}
-
-			mCache.put(key, value);
+	/**
+	 * Set serializer which writes values to disk cache and reads them back.
+	 * Serializer must accept all values stored by
+	 * {@link #put(String, Parcelable)}. Files written by another serializer
+	 * version are treated as cache miss.
+	 *
+	 * @param serializer
+	 *            - serializer, by default {@link ParcelableSerializer}
+	 */
+	public void setSerializer(CacheSerializer<? extends Parcelable> serializer) {
+		if (serializer == null) {
+			throw new NullPointerException("serializer is null");
+		}
+		mSerializer = serializer;
+	}
 
-			return value;
+	/**
+	 * Stores binary data with the specified key in disk cache only. Blobs are
+	 * not kept in in-memory cache, they are intended for big payloads which are
+	 * read by {@link #getBlob(String)} without copying to heap.
+	 *
+	 * @param key
+	 *            - key with which the specified data is to be associated
+	 * @param data
+	 *            - binary data
+	 * @throws IOException
+	 *             if disk cache is not enabled or data can't be written
+	 */
+	public void putBlob(String key, byte[] data) throws IOException {
+		if (!isDiskCacheEnabled) {
+			throw new IOException("Disk cache is not enabled");
 		}
+		mCache.remove(key);
+		writeBlobToDisk(fileForKey(key), data);
+	}
 
-		// cache miss
-		return null;
+	/**
+	 * Returns read-only view of binary data stored by
+	 * {@link #putBlob(String, byte[])}, or {@code null} if there is no data for
+	 * the key or expiration time is over. Big files are memory mapped, so data
+	 * is not copied to heap.
+	 *
+	 * @param key
+	 *            - the key whose associated data is to be returned
+	 * @return read-only buffer positioned at the beginning of data
+	 */
+	public ByteBuffer getBlob(String key) {
+		if (!isDiskCacheEnabled) {
+			return null;
+		}
+		File file = fileForKey(key);
+		if (!file.exists()) {
+			mMissCount.incrementAndGet();
+			return null;
+		}
+		long ageInMinutes = countFileAgeInMinutes(file);
+		if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
+			deleteFromDisk(file);
+			mMissCount.incrementAndGet();
+			return null;
+		}
+		ByteBuffer content;
+		try {
+			content = openContent(file, BYTES_SERIALIZER);
+		} catch (IOException e) {
+			e.printStackTrace();
+			content = null;
+		}
+		if (content == null) {
+			mMissCount.incrementAndGet();
+			return null;
+		}
+		mDiskHitCount.incrementAndGet();
+		recordAccess(key, false);
+		return content.asReadOnlyBuffer();
 	}
 
 	/**
@@ -294,11 +627,16 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 */
 	public void remove(String key) {
 		mCache.remove(key);
+		if (mHotKeys != null) {
+			mHotKeys.forget(key);
+		}
 
 		if (isDiskCacheEnabled) {
-			File cachedValue = new File(mRootDir + "/" + key);
+			File cachedValue = fileForKey(key);
 			if (cachedValue.exists()) {
-				cachedValue.delete();
+				deleteFromDisk(cachedValue);
+			} else {
+				mAccessTimes.remove(cachedValue.getName());
 			}
 		}
 	}
@@ -309,6 +647,9 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 	 */
 	public void removeAll() {
 		mCache.clear();
+		if (mHotKeys != null) {
+			mHotKeys.clear();
+		}
 		if (isDiskCacheEnabled) {
 			File cachedValue = new File(mRootDir + "/");
 			Log.e(TAG, "exist: " + cachedValue.exists());
@@ -318,25 +659,156 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 					listFiles[i].delete();
 				}
 			}
+			mAccessTimes.clear();
+			mDiskSizeInBytes.set(0);
 		}
 	}
 
-	@Override
-	public void onLowMemory() {
-		if (mTypeOfDiskCache == AsyncCacheClient.INTERNAL_CACHE) {
-			removeAll();
-		} else {
+	/**
+	 * Prefetch hottest values of previous application run from disk into
+	 * memory. Values are read on background thread, so method returns
+	 * immediately.
+	 */
+	public void warmUp() {
+		if (!isDiskCacheEnabled) {
+			return;
+		}
+		sDiskIoExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				List<String> keys = new ArrayList<String>(WARM_UP_SIZE);
+				List<String> arrayKeys = new ArrayList<String>();
+				try {
+					mHotKeys.load(keys, arrayKeys);
+				} catch (IOException e) {
+					Log.w(TAG, "can't read hot keys", e);
+					return;
+				}
+				for (String key : keys) {
+					if (mCache.get(key) == null) {
+						getFromDisk(key);
+					}
+				}
+				for (String key : arrayKeys) {
+					if (mCache.get(key) == null) {
+						getArrayFromDisk(key);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Save hottest keys to disk, so they are prefetched by {@link #warmUp()}
+	 * after application restart. Keys are also saved periodically while
+	 * cache is used.
+	 */
+	public void saveHotKeys() {
+		if (!isDiskCacheEnabled) {
+			return;
+		}
+		try {
+			mHotKeys.save();
+		} catch (IOException e) {
+			Log.w(TAG, "can't save hot keys", e);
+		}
+	}
+
+	/**
+	 * Limit size of disk cache. When quota is exceeded least recently accessed
+	 * files are removed on background thread until size of disk cache is 90%
+	 * of quota. Quota of all storages is set by
+	 * {@link AsyncCacheClient#setDiskQuota(long)}.
+	 *
+	 * @param quotaInBytes
+	 *            - maximum size of disk cache, 0 means unlimited
+	 */
+	public void setDiskQuota(long quotaInBytes) {
+		mDiskQuotaInBytes = quotaInBytes;
+		// check size which was accumulated before quota
+		onDiskGrowth(0);
+	}
+
+	/**
+	 * @return snapshot of hit, miss and eviction counters
+	 */
+	public CacheStats getStats() {
+		return new CacheStats(mHitCount.get(), mDiskHitCount.get(), mMissCount.get(), mEvictionCount.get(),
+				mEvictedBytes.get(), mDiskSizeInBytes.get());
+	}
+
+	/**
+	 * Removes approximately <code>percent</code> of in-memory values, least
+	 * recently used values first in memory budget mode. Disk cache is not
+	 * touched.
+	 *
+	 * @param percent
+	 *            - from 0 to 100
+	 */
+	public void trimMemory(int percent) {
+		if (percent >= 100) {
 			mCache.clear();
+		} else if (percent > 0) {
+			mCache.trim(percent);
+		}
+	}
+
+	/**
+	 * Sheds in-memory values gradually: first notification removes a quarter
+	 * of values, consecutive notifications remove more up to whole in-memory
+	 * cache. Disk cache is never removed because of low heap, so next screen
+	 * doesn't turn into a burst of network requests.
+	 */
+	@Override
+	public synchronized void onLowMemory() {
+		long now = System.currentTimeMillis();
+		if (now - mLastLowMemoryTime > LOW_MEMORY_ESCALATION_PERIOD_IN_MILLIS) {
+			mLowMemoryLevel = 0;
+		} else if (mLowMemoryLevel < LOW_MEMORY_TRIM_PERCENTS.length - 1) {
+			++mLowMemoryLevel;
+		}
+		mLastLowMemoryTime = now;
+		trimMemory(LOW_MEMORY_TRIM_PERCENTS[mLowMemoryLevel]);
+	}
+
+	/**
+	 * @param diskSize
+	 *            - size of value serialized on disk or -1 if it is unknown
+	 */
+	private int weigh(Parcelable value, int diskSize) {
+		if (!(mCache instanceof BudgetedMemoryCache)) {
+			// soft values mode doesn't use weight
+			return 0;
+		}
+		if (value instanceof Sizeable) {
+			return ((Sizeable) value).getSizeInBytes();
+		}
+		if (diskSize >= 0) {
+			return diskSize;
+		}
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.writeParcelable(value, 0);
+			return parcel.dataSize();
+		} finally {
+			parcel.recycle();
 		}
 	}
 
-	private void initInMemoryCache(int initialCapacity, int expirationInMinutes, int maxConcurrentThreads) {
-		MapMaker mapMaker = new MapMaker();
-		mapMaker.initialCapacity(initialCapacity);
-		mapMaker.expiration(expirationInMinutes * 60, TimeUnit.SECONDS);
-		mapMaker.concurrencyLevel(maxConcurrentThreads);
-		mapMaker.softValues();
-		this.mCache = mapMaker.makeMap();
+	private int weigh(Parcelable[] values, int diskSize) {
+		if (!(mCache instanceof BudgetedMemoryCache)) {
+			return 0;
+		}
+		if (diskSize >= 0) {
+			return diskSize;
+		}
+		int weight = 0;
+		for (Parcelable value : values) {
+			if (value != null) {
+				weight += weigh(value, -1);
+			}
+		}
+		return weight;
 	}
 
 	private void initDiskCache(Context context, int protocol, int typeOfDiskCache) throws IOException {
@@ -377,22 +849,278 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 		isDiskCacheEnabled = outFile.exists();
 
 		if (isDiskCacheEnabled) {
+			mHotKeys = new HotKeyTracker(new File(mRootDir, HOT_KEYS_FILE_NAME), WARM_UP_SIZE,
+					HOT_KEYS_SAVE_PERIOD_IN_MILLIS);
 			expiryDiskCache();
 		}
 	}
 
+	/**
+	 * Executor for parallel disk operations of all storages
+	 */
+	static ExecutorService getDiskIoExecutor() {
+		return sDiskIoExecutor;
+	}
+
+	/** package */
+	boolean isDiskCacheEnabled() {
+		return isDiskCacheEnabled;
+	}
+
+	/** package */
+	Parcelable getFromMemory(String key) {
+		return (Parcelable) mCache.get(key);
+	}
+
+	/** package */
+	Parcelable getFromDisk(String key) {
+		if (!isDiskCacheEnabled) {
+			return null;
+		}
+		File file = fileForKey(key);
+		if (!file.exists()) {
+			// cache miss
+			return null;
+		}
+		long ageInMinutes = countFileAgeInMinutes(file);
+		if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
+			deleteFromDisk(file);
+			return null;
+		}
+		int diskSize = CacheFile.contentSizeOf(file);
+		Parcelable value;
+		try {
+			value = readValueFromDisk(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		if (value == null) {
+			return null;
+		}
+		mDiskHitCount.incrementAndGet();
+		mCache.put(key, value, weigh(value, diskSize));
+
+		return value;
+	}
+
+	private Parcelable[] getArrayFromDisk(String key) {
+		if (!isDiskCacheEnabled) {
+			return null;
+		}
+		File file = fileForKey(key);
+		if (!file.exists()) {
+			// cache miss
+			return null;
+		}
+		long ageInMinutes = countFileAgeInMinutes(file);
+		if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
+			deleteFromDisk(file);
+			return null;
+		}
+		int diskSize = CacheFile.contentSizeOf(file);
+		Parcelable[] value;
+		try {
+			value = readValuesFromDisk(file);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+
+		if (value == null) {
+			return null;
+		}
+		mDiskHitCount.incrementAndGet();
+		mCache.put(key, value, weigh(value, diskSize));
+
+		return value;
+	}
+
+	private void recordAccess(String key, boolean isArray) {
+		if (mHotKeys != null && mHotKeys.record(key, isArray)) {
+			sDiskIoExecutor.execute(mSaveHotKeysTask);
+		}
+		if (isDiskQuotaEnabled()) {
+			mAccessTimes.put(fileNameForKey(key), System.currentTimeMillis());
+		}
+	}
+
+	private boolean isDiskQuotaEnabled() {
+		DiskQuota globalDiskQuota = mGlobalDiskQuota;
+		return mDiskQuotaInBytes > 0 || (globalDiskQuota != null && globalDiskQuota.isEnabled());
+	}
+
+	/**
+	 * Account written bytes and schedule trimming if quota is exceeded
+	 */
+	private void onDiskGrowth(long deltaInBytes) {
+		long size = mDiskSizeInBytes.addAndGet(deltaInBytes);
+		long quota = mDiskQuotaInBytes;
+		if (quota > 0 && size > quota && mIsDiskTrimScheduled.compareAndSet(false, true)) {
+			sDiskIoExecutor.execute(mTrimDiskTask);
+		}
+		DiskQuota globalDiskQuota = mGlobalDiskQuota;
+		if (globalDiskQuota != null) {
+			globalDiskQuota.onDiskGrowth();
+		}
+	}
+
+	private void trimDisk() {
+		long quota = mDiskQuotaInBytes;
+		if (quota <= 0) {
+			return;
+		}
+		List<DiskQuota.Entry> entries = new ArrayList<DiskQuota.Entry>();
+		long used = collectDiskEntries(entries);
+		DiskQuota.evict(entries, used, quota * DiskQuota.TRIM_TARGET_PERCENT / 100);
+	}
+
+	/**
+	 * Add all files of disk cache to entries with their last access time.
+	 * Tracked size of disk cache is corrected by the scan.
+	 *
+	 * @return size of files in bytes
+	 */
+	long collectDiskEntries(List<DiskQuota.Entry> entries) {
+		if (!isDiskCacheEnabled) {
+			return 0;
+		}
+		File[] files = new File(mRootDir).listFiles();
+		if (files == null) {
+			return 0;
+		}
+		long size = 0;
+		for (File file : files) {
+			if (!isCacheFile(file)) {
+				continue;
+			}
+			long accessTime = file.lastModified();
+			Long lastAccess = mAccessTimes.get(file.getName());
+			if (lastAccess != null && lastAccess > accessTime) {
+				accessTime = lastAccess;
+			}
+			entries.add(new DiskQuota.Entry(this, file, accessTime));
+			size += file.length();
+		}
+		mDiskSizeInBytes.set(size);
+		return size;
+	}
+
+	/**
+	 * Remove file to fit disk quota
+	 *
+	 * @return amount of freed bytes
+	 */
+	long evict(File file) {
+		long freed = deleteFromDisk(file);
+		if (freed > 0) {
+			mEvictionCount.incrementAndGet();
+			mEvictedBytes.addAndGet(freed);
+		}
+		return freed;
+	}
+
+	long getDiskSize() {
+		return mDiskSizeInBytes.get();
+	}
+
+	void setGlobalDiskQuota(DiskQuota globalDiskQuota) {
+		mGlobalDiskQuota = globalDiskQuota;
+	}
+
+	/**
+	 * Delete file of disk cache and account freed bytes
+	 *
+	 * @return amount of freed bytes
+	 */
+	private long deleteFromDisk(File file) {
+		mAccessTimes.remove(file.getName());
+		long length = file.length();
+		if (file.delete()) {
+			mDiskSizeInBytes.addAndGet(-length);
+			return length;
+		}
+		return 0;
+	}
+
+	/**
+	 * Hot keys and temporary files are not values of cache
+	 */
+	private static boolean isCacheFile(File file) {
+		String name = file.getName();
+		return !name.equals(HOT_KEYS_FILE_NAME) && !name.endsWith(TEMP_FILE_SUFFIX);
+	}
+
+	private void invokeDiskTasks(List<Callable<Void>> diskTasks) {
+		if (diskTasks.isEmpty()) {
+			return;
+		}
+		if (diskTasks.size() == 1 || Boolean.TRUE.equals(sIsDiskIoThread.get())) {
+			for (Callable<Void> task : diskTasks) {
+				try {
+					task.call();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+			return;
+		}
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(diskTasks.size());
+		for (Callable<Void> task : diskTasks) {
+			futures.add(sDiskIoExecutor.submit(task));
+		}
+		for (Future<Void> future : futures) {
+			waitFor(future);
+		}
+	}
+
+	private static <T> T waitFor(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+		}
+		return null;
+	}
+
+	/**
+	 * All keys are stored as file names, so non-word characters are replaced
+	 */
+	private File fileForKey(String key) {
+		return new File(mRootDir, fileNameForKey(key));
+	}
+
+	private static String fileNameForKey(String key) {
+		return NON_WORD_PATTERN.matcher(key).replaceAll("_");
+	}
+
 	private void expiryDiskCache() {
 		File[] cachedFiles = new File(mRootDir).listFiles();
 		if (cachedFiles == null) {
 			return;
 		}
+		long size = 0;
+		long now = System.currentTimeMillis();
 		for (File f : cachedFiles) {
+			if (f.getName().endsWith(TEMP_FILE_SUFFIX) && now - f.lastModified() > STALE_TEMP_FILE_AGE_IN_MILLIS) {
+				f.delete();
+			}
+			if (!isCacheFile(f)) {
+				continue;
+			}
 			long ageInMinutes = countFileAgeInMinutes(f);
 
 			if (ageInMinutes >= mDiskCacheExpirationInMinutes && mDiskCacheExpirationInMinutes != 0) {
+				mAccessTimes.remove(f.getName());
 				f.delete();
+			} else {
+				size += f.length();
 			}
 		}
+		mDiskSizeInBytes.set(size);
 	}
 
 	private long countFileAgeInMinutes(File file) {
@@ -401,120 +1129,127 @@ public class AsyncCacheStorage implements OnLowMemoryListener {
 		return ((currentTimeCalendar.getTimeInMillis() - lastModified) / (1000 * 60));
 	}
 
-	private void cacheToDisk(String key, Parcelable value) {
-		key = key.replaceAll("\\W", "_");
-		File file = new File(mRootDir + "/" + key);
+	/**
+	 * @return size of serialized value or -1 if value isn't written
+	 */
+	private int cacheToDisk(String key, Parcelable value) {
 		try {
-			file.createNewFile();
-			file.deleteOnExit();
-
+			File file = fileForKey(key);
 			writeValueToDisk(file, value);
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			return CacheFile.contentSizeOf(file);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return -1;
 		}
 	}
 
-	private void cacheToDisk(String key, Parcelable[] values) {
-		key = key.replaceAll("\\W", "_");
-		File file = new File(mRootDir + "/" + key);
+	private int cacheToDisk(String key, Parcelable[] values) {
 		try {
-			file.createNewFile();
-			file.deleteOnExit();
-
+			File file = fileForKey(key);
 			writeValueToDisk(file, values);
-
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			return CacheFile.contentSizeOf(file);
 		} catch (IOException e) {
 			e.printStackTrace();
+			return -1;
 		}
 	}
 
+	@SuppressWarnings("unchecked")
 	protected Parcelable readValueFromDisk(File file) throws IOException {
-		FileInputStream istream = new FileInputStream(file);
-
-		// Read file into byte array
-		byte[] dataWritten = new byte[(int) file.length()];
-		BufferedInputStream bistream = new BufferedInputStream(istream);
-		bistream.read(dataWritten);
-		bistream.close();
-
-		// Create parcel with cached data
-		Parcel parcelIn = Parcel.obtain();
-		parcelIn.unmarshall(dataWritten, 0, dataWritten.length);
-		parcelIn.setDataPosition(0);
-		// Read class name from parcel and use the class loader to read parcel
-		String className = parcelIn.readString();
-		// In case this sometimes hits a null value
-		if (className == null) {
-			return null;
-		}
-		Class<?> clazz;
+		return readFromDisk(file, (CacheSerializer<Parcelable>) mSerializer);
+	}
+
+	protected Parcelable[] readValuesFromDisk(File file) throws IOException {
+		return readFromDisk(file, ARRAY_SERIALIZER);
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void writeValueToDisk(File file, Parcelable data) throws IOException {
+		writeToDisk(file, (CacheSerializer<Parcelable>) mSerializer, data);
+	}
+
+	protected void writeValueToDisk(File file, Parcelable[] data) throws IOException {
+		writeToDisk(file, ARRAY_SERIALIZER, data);
+	}
+
+	protected void writeBlobToDisk(File file, byte[] data) throws IOException {
+		writeToDisk(file, BYTES_SERIALIZER, data);
+	}
+
+	/**
+	 * Write file header and value to temporary file and rename it to target
+	 * file, so readers never see partially written file and existing memory
+	 * mappings of old file stay valid.
+	 */
+	protected <T> void writeToDisk(File file, CacheSerializer<T> serializer, T value) throws IOException {
+		File tempFile = new File(file.getPath() + '.' + sTempFileSequence.incrementAndGet() + TEMP_FILE_SUFFIX);
+		DataOutputStream ostream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
 		try {
-			clazz = Class.forName(className);
-			Parcelable parcelable = parcelIn.readParcelable(clazz.getClassLoader());
-			return parcelable;
-		} catch (ClassNotFoundException e) {
-			throw new IOException(e.getMessage());
+			CacheFile.writeHeader(ostream, serializer);
+			serializer.write(value, ostream);
+		} finally {
+			ostream.close();
+		}
+		long oldLength = file.length();
+		long newLength = tempFile.length();
+		if (!tempFile.renameTo(file)) {
+			tempFile.delete();
+			throw new IOException("Can't rename " + tempFile + " to " + file);
 		}
+		onDiskGrowth(newLength - oldLength);
 	}
 
-	protected Parcelable[] readValuesFromDisk(File file) throws IOException {
-		FileInputStream istream = new FileInputStream(file);
-
-		// Read file into byte array
-		byte[] dataWritten = new byte[(int) file.length()];
-		BufferedInputStream bistream = new BufferedInputStream(istream);
-		bistream.read(dataWritten);
-		bistream.close();
-
-		// Create parcel with cached data
-		Parcel parcelIn = Parcel.obtain();
-		parcelIn.unmarshall(dataWritten, 0, dataWritten.length);
-		parcelIn.setDataPosition(0);
-
-		// Read class name from parcel and use the class loader to read parcel
-		String className = parcelIn.readString();
-		// In case this sometimes hits a null value
-		if (className == null) {
+	/**
+	 * Read value written by {@link #writeToDisk(File, CacheSerializer, Object)}.
+	 * If file was written by another serializer {@code null} is returned. If
+	 * file was written in another format, by another version of serializer or
+	 * can't be decoded it is removed and {@code null} is returned.
+	 */
+	protected <T> T readFromDisk(File file, CacheSerializer<T> serializer) throws IOException {
+		ByteBuffer content = openContent(file, serializer);
+		if (content == null) {
 			return null;
 		}
-		Class<?> clazz;
 		try {
-			clazz = Class.forName(className);
-			return parcelIn.readParcelableArray(clazz.getClassLoader());
-		} catch (ClassNotFoundException e) {
-			throw new IOException(e.getMessage());
+			return serializer.read(content);
+		} catch (RuntimeException e) {
+			// for example BadParcelableException of damaged file
+			Log.w(TAG, "can't decode " + file + ", it is removed", e);
+			deleteFromDisk(file);
+			return null;
 		}
 	}
 
-	protected void writeValueToDisk(File file, Parcelable data) throws IOException {
-		// Write object into parcel
-		Parcel parcelOut = Parcel.obtain();
-		parcelOut.writeString(data.getClass().getCanonicalName());
-		parcelOut.writeParcelable(data, 0);
-
-		// Write byte data to file
-		FileOutputStream ostream = new FileOutputStream(file);
-		BufferedOutputStream bistream = new BufferedOutputStream(ostream);
-		bistream.write(parcelOut.marshall());
-		bistream.close();
+	/**
+	 * Check file header and return content of file after header. Big files
+	 * are memory mapped.
+	 *
+	 * @return content or {@code null} if header doesn't match serializer
+	 */
+	private ByteBuffer openContent(File file, CacheSerializer<?> serializer) throws IOException {
+		ByteBuffer buffer = CacheFile.open(file);
+		switch (CacheFile.checkHeader(buffer, serializer)) {
+		case CacheFile.HEADER_VALID:
+			return buffer.slice();
+		case CacheFile.HEADER_FOREIGN:
+			// value of another kind, for example blob read by get(), file is
+			// valid for its own serializer
+			return null;
+		default:
+			// written by old version of cache or serializer
+			deleteFromDisk(file);
+			return null;
+		}
 	}
 
-	protected void writeValueToDisk(File file, Parcelable[] data) throws IOException {
-		// Write object into parcel
-		Parcel parcelOut = Parcel.obtain();
-		parcelOut.writeString(data.getClass().getCanonicalName());
-		parcelOut.writeParcelableArray(data, 0);
-
-		// Write byte data to file
-		FileOutputStream ostream = new FileOutputStream(file);
-		BufferedOutputStream bistream = new BufferedOutputStream(ostream);
-		bistream.write(parcelOut.marshall());
-		bistream.close();
+	/**
+	 * Value which knows its size. Used to weigh values in memory budget mode
+	 * without marshalling them.
+	 */
+	public interface Sizeable {
+		/**
+		 * @return approximate size of value in bytes
+		 */
+		int getSizeInBytes();
 	}
-
 }
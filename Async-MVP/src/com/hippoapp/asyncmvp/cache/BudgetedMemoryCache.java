@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link MemoryCache} with explicit memory budget. Each value is weighed by its
+ * payload size and least recently used values are evicted as soon as total
+ * weight exceeds the budget, so eviction is deterministic and does not depend
+ * on garbage collector.
+ *
+ * <p>
+ * The cache is split into segments to reduce lock contention. Each segment
+ * is an access-ordered {@link LinkedHashMap} and owns an equal part of the
+ * budget, so total weight never exceeds the budget. Value heavier than part of
+ * its segment isn't kept.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class BudgetedMemoryCache implements MemoryCache {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] mSegments;
+	private final int mSegmentShift;
+
+	/**
+	 * @param budgetInBytes
+	 *            - maximum total weight of values
+	 * @param expirationInMillis
+	 *            - values live time, 0 means values never expire
+	 * @param maxConcurrentThreads
+	 *            - estimated amount of concurrent threads, defines amount of
+	 *            segments
+	 */
+	BudgetedMemoryCache(long budgetInBytes, long expirationInMillis, int maxConcurrentThreads) {
+		int segmentCount = 1;
+		int shift = 0;
+		while (segmentCount < maxConcurrentThreads && segmentCount < MAX_SEGMENTS) {
+			segmentCount <<= 1;
+			++shift;
+		}
+		mSegmentShift = 32 - shift;
+		mSegments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; ++i) {
+			mSegments[i] = new Segment(budgetInBytes / segmentCount, expirationInMillis);
+		}
+	}
+
+	@Override
+	public Object get(String key) {
+		return segmentFor(key).get(key);
+	}
+
+	@Override
+	public void put(String key, Object value, int weight) {
+		segmentFor(key).put(key, value, weight);
+	}
+
+	@Override
+	public void remove(String key) {
+		segmentFor(key).remove(key);
+	}
+
+	@Override
+	public void clear() {
+		for (Segment segment : mSegments) {
+			segment.clear();
+		}
+	}
+
+	@Override
+	public void trim(int percent) {
+		for (Segment segment : mSegments) {
+			segment.trim(percent);
+		}
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Segment segment : mSegments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return total weight of cached values in bytes
+	 */
+	long weightedSize() {
+		long weight = 0;
+		for (Segment segment : mSegments) {
+			weight += segment.weightedSize();
+		}
+		return weight;
+	}
+
+	private Segment segmentFor(String key) {
+		if (mSegments.length == 1) {
+			return mSegments[0];
+		}
+		// spread hash so that high bits select segment
+		int h = key.hashCode() * 0x9E3779B9;
+		return mSegments[h >>> mSegmentShift];
+	}
+
+	private static final class Entry {
+		final Object value;
+		final int weight;
+		final long writeTime;
+
+		Entry(Object value, int weight, long writeTime) {
+			this.value = value;
+			this.weight = weight;
+			this.writeTime = writeTime;
+		}
+	}
+
+	private static final class Segment {
+		private final long mBudget;
+		private final long mExpirationInMillis;
+
+		private final LinkedHashMap<String, Entry> mMap = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		private long mWeight;
+
+		Segment(long budget, long expirationInMillis) {
+			mBudget = budget;
+			mExpirationInMillis = expirationInMillis;
+		}
+
+		synchronized Object get(String key) {
+			Entry entry = mMap.get(key);
+			if (entry == null) {
+				return null;
+			}
+			if (mExpirationInMillis != 0 && System.currentTimeMillis() - entry.writeTime >= mExpirationInMillis) {
+				mMap.remove(key);
+				mWeight -= entry.weight;
+				return null;
+			}
+			return entry.value;
+		}
+
+		synchronized void put(String key, Object value, int weight) {
+			Entry old = mMap.remove(key);
+			if (old != null) {
+				mWeight -= old.weight;
+			}
+			if (weight > mBudget) {
+				// value never fits in part of budget, keep it only on disk
+				return;
+			}
+			mMap.put(key, new Entry(value, weight, System.currentTimeMillis()));
+			mWeight += weight;
+			evictTo(mBudget);
+		}
+
+		synchronized void remove(String key) {
+			Entry old = mMap.remove(key);
+			if (old != null) {
+				mWeight -= old.weight;
+			}
+		}
+
+		synchronized void clear() {
+			mMap.clear();
+			mWeight = 0;
+		}
+
+		synchronized int size() {
+			return mMap.size();
+		}
+
+		synchronized void trim(int percent) {
+			evictTo(mWeight * (100 - percent) / 100);
+		}
+
+		synchronized long weightedSize() {
+			return mWeight;
+		}
+
+		/**
+		 * Evicts least recently used entries until total weight is not
+		 * greater than <code>weight</code>.
+		 */
+		private void evictTo(long weight) {
+			Iterator<Map.Entry<String, Entry>> iterator = mMap.entrySet().iterator();
+			while (mWeight > weight && iterator.hasNext()) {
+				mWeight -= iterator.next().getValue().weight;
+				iterator.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link CacheSerializer} which stores raw bytes as is.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class BytesSerializer implements CacheSerializer<byte[]> {
+
+	private static final int VERSION = 1;
+
+	@Override
+	public int getId() {
+		return ID_BYTES;
+	}
+
+	@Override
+	public int getVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public void write(byte[] value, DataOutput out) throws IOException {
+		out.write(value);
+	}
+
+	@Override
+	public byte[] read(ByteBuffer in) throws IOException {
+		byte[] data = new byte[in.remaining()];
+		in.get(data);
+		return data;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Layout of disk cache file of {@link AsyncCacheStorage}: header (magic, id
+ * and version of serializer) and content written by {@link CacheSerializer}.
+ * Doesn't depend on android.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+final class CacheFile {
+
+	/**
+	 * First bytes of each cache file: "AMC" and version of file format
+	 */
+	static final int FILE_MAGIC = 0x414D4302;
+	/**
+	 * Magic, id of serializer and version of serializer
+	 */
+	static final int HEADER_SIZE = 12;
+
+	/**
+	 * Files of this size and bigger are read via memory mapping
+	 */
+	static final int MAPPED_READ_THRESHOLD = 64 * 1024;
+
+	/**
+	 * Header matches serializer, content follows
+	 */
+	static final int HEADER_VALID = 0;
+	/**
+	 * File is written by another serializer and is valid for it
+	 */
+	static final int HEADER_FOREIGN = 1;
+	/**
+	 * File is written in old format or by old version of serializer
+	 */
+	static final int HEADER_STALE = 2;
+
+	private CacheFile() {
+	}
+
+	static void writeHeader(DataOutput out, CacheSerializer<?> serializer) throws IOException {
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(serializer.getId());
+		out.writeInt(serializer.getVersion());
+	}
+
+	/**
+	 * Check header of file and move buffer position after it.
+	 *
+	 * @return {@link #HEADER_VALID}, {@link #HEADER_FOREIGN} or
+	 *         {@link #HEADER_STALE}
+	 */
+	static int checkHeader(ByteBuffer buffer, CacheSerializer<?> serializer) {
+		if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != FILE_MAGIC) {
+			return HEADER_STALE;
+		}
+		if (buffer.getInt() != serializer.getId()) {
+			// built-in serializers have the same version, so version alone
+			// doesn't tell which serializer wrote file
+			return HEADER_FOREIGN;
+		}
+		if (buffer.getInt() != serializer.getVersion()) {
+			return HEADER_STALE;
+		}
+		return HEADER_VALID;
+	}
+
+	/**
+	 * @return size of serialized value in file or -1 if file is absent
+	 */
+	static int contentSizeOf(File file) {
+		long length = file.length() - HEADER_SIZE;
+		return length < 0 || length > Integer.MAX_VALUE ? -1 : (int) length;
+	}
+
+	/**
+	 * Whole file, big files are memory mapped.
+	 */
+	static ByteBuffer open(File file) throws IOException {
+		if (file.length() >= MAPPED_READ_THRESHOLD) {
+			return mapFile(file);
+		}
+		return ByteBuffer.wrap(readFile(file));
+	}
+
+	/**
+	 * Read whole file into byte array. Unlike single
+	 * {@link FileInputStream#read(byte[])} call, short reads are handled.
+	 */
+	static byte[] readFile(File file) throws IOException {
+		long length = file.length();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("File is too big: " + file);
+		}
+		byte[] data = new byte[(int) length];
+		FileInputStream istream = new FileInputStream(file);
+		try {
+			int offset = 0;
+			while (offset < data.length) {
+				int read = istream.read(data, offset, data.length - offset);
+				if (read < 0) {
+					throw new IOException("Unexpected end of file: " + file);
+				}
+				offset += read;
+			}
+		} finally {
+			istream.close();
+		}
+		return data;
+	}
+
+	/**
+	 * Map file into memory in read only mode. Mapping stays valid after
+	 * channel is closed.
+	 */
+	static ByteBuffer mapFile(File file) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			randomAccessFile.close();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cached values to binary form which is stored in disk cache and
+ * back. Serializer is defined for each protocol by
+ * {@link AsyncCacheClient#setSerializer(int, CacheSerializer)}, by default
+ * {@link ParcelableSerializer} is used.
+ *
+ * <p>
+ * Each cache file starts with a header which contains id of serializer which
+ * wrote the file ({@link #getId()}) and its {@link #getVersion()}. File of
+ * another serializer is treated as cache miss. File with another version or
+ * file which {@link #read(ByteBuffer)} can't decode (throws
+ * {@link RuntimeException}) is treated as cache miss and removed, so change
+ * version each time binary format is changed.
+ *
+ * <p>
+ * Built-in serializers:
+ * <ul>
+ * <li>{@link ParcelableSerializer} - any {@link android.os.Parcelable}, uses
+ * {@link android.os.Parcel} format which isn't stable between platform
+ * versions, so its version includes platform version and files are dropped
+ * after OS upgrade
+ * <li>{@link ResponseDataSerializer} - compact binary format of
+ * {@link ResponseData}
+ * <li>{@link BytesSerializer} - raw bytes, used for blobs
+ * </ul>
+ *
+ * @param <T>
+ *            type of values
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public interface CacheSerializer<T> {
+
+	/** Id of {@link ParcelableSerializer} */
+	int ID_PARCELABLE = 1;
+
+	/** Id of {@link ParcelableArraySerializer} */
+	int ID_PARCELABLE_ARRAY = 2;
+
+	/** Id of {@link BytesSerializer} */
+	int ID_BYTES = 3;
+
+	/** Id of {@link ResponseDataSerializer} */
+	int ID_RESPONSE_DATA = 4;
+
+	/**
+	 * Stable id of serializer which is written to file header. It must not
+	 * change between builds of application (so it can't be derived from class
+	 * name, which changes after obfuscation or renaming) and must be unique
+	 * among serializers of application. Ids below 100 are reserved for
+	 * built-in serializers.
+	 *
+	 * @return id of serializer
+	 */
+	int getId();
+
+	/**
+	 * @return version of binary format
+	 */
+	int getVersion();
+
+	/**
+	 * Write value.
+	 *
+	 * @param value
+	 *            - not null value
+	 * @param out
+	 *            - output positioned after file header
+	 */
+	void write(T value, DataOutput out) throws IOException;
+
+	/**
+	 * Read value.
+	 *
+	 * @param in
+	 *            - content of file after header. Buffer can be memory mapped
+	 *            file, don't keep reference to it.
+	 * @return value or {@code null} if value can't be read
+	 */
+	T read(ByteBuffer in) throws IOException;
+}
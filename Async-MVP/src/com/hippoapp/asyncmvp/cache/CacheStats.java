@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+/**
+ * Snapshot of counters of {@link AsyncCacheStorage}. Counters are accumulated
+ * since storage creation.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public final class CacheStats {
+
+	private final long mHitCount;
+	private final long mDiskHitCount;
+	private final long mMissCount;
+	private final long mEvictionCount;
+	private final long mEvictedBytes;
+	private final long mDiskSizeInBytes;
+
+	/** package */
+	CacheStats(long hitCount, long diskHitCount, long missCount, long evictionCount, long evictedBytes,
+			long diskSizeInBytes) {
+		mHitCount = hitCount;
+		mDiskHitCount = diskHitCount;
+		mMissCount = missCount;
+		mEvictionCount = evictionCount;
+		mEvictedBytes = evictedBytes;
+		mDiskSizeInBytes = diskSizeInBytes;
+	}
+
+	/**
+	 * @return amount of reads served from in-memory cache
+	 */
+	public long getHitCount() {
+		return mHitCount;
+	}
+
+	/**
+	 * @return amount of reads served from disk cache
+	 */
+	public long getDiskHitCount() {
+		return mDiskHitCount;
+	}
+
+	/**
+	 * @return amount of reads which found no value
+	 */
+	public long getMissCount() {
+		return mMissCount;
+	}
+
+	/**
+	 * @return amount of files removed from disk cache to fit disk quota
+	 */
+	public long getEvictionCount() {
+		return mEvictionCount;
+	}
+
+	/**
+	 * @return amount of bytes freed on disk to fit disk quota
+	 */
+	public long getEvictedBytes() {
+		return mEvictedBytes;
+	}
+
+	/**
+	 * @return current size of disk cache
+	 */
+	public long getDiskSizeInBytes() {
+		return mDiskSizeInBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats [hits=" + mHitCount + ", diskHits=" + mDiskHitCount + ", misses=" + mMissCount
+				+ ", evictions=" + mEvictionCount + ", evictedBytes=" + mEvictedBytes + ", diskSize="
+				+ mDiskSizeInBytes + "]";
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Byte quota of disk cache shared by all storages of
+ * {@link AsyncCacheClient}. When total size of storages exceeds quota, least
+ * recently accessed files of all storages are removed on disk I/O thread.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class DiskQuota {
+
+	/**
+	 * Trimming frees a bit more than needed, so the next write doesn't start
+	 * trimming again
+	 */
+	static final int TRIM_TARGET_PERCENT = 90;
+
+	private final ProtocolStorageTable mStorages;
+
+	private volatile long mQuotaInBytes;
+
+	private final AtomicBoolean mIsTrimScheduled = new AtomicBoolean();
+
+	private final Runnable mTrimTask = new Runnable() {
+		@Override
+		public void run() {
+			mIsTrimScheduled.set(false);
+			trim();
+		}
+	};
+
+	DiskQuota(ProtocolStorageTable storages) {
+		mStorages = storages;
+	}
+
+	/**
+	 * @param quotaInBytes
+	 *            - quota of all storages, 0 means unlimited
+	 */
+	void setQuota(long quotaInBytes) {
+		mQuotaInBytes = quotaInBytes;
+		onDiskGrowth();
+	}
+
+	boolean isEnabled() {
+		return mQuotaInBytes > 0;
+	}
+
+	/**
+	 * Called after storage wrote to disk. Schedules trimming if quota is
+	 * exceeded and trimming isn't scheduled yet.
+	 */
+	void onDiskGrowth() {
+		long quota = mQuotaInBytes;
+		if (quota > 0 && usedBytes() > quota && mIsTrimScheduled.compareAndSet(false, true)) {
+			AsyncCacheStorage.getDiskIoExecutor().execute(mTrimTask);
+		}
+	}
+
+	private long usedBytes() {
+		long used = 0;
+		for (AsyncCacheStorage storage : mStorages.values()) {
+			used += storage.getDiskSize();
+		}
+		return used;
+	}
+
+	private void trim() {
+		long quota = mQuotaInBytes;
+		if (quota <= 0) {
+			return;
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		long used = 0;
+		for (AsyncCacheStorage storage : mStorages.values()) {
+			used += storage.collectDiskEntries(entries);
+		}
+		evict(entries, used, quota * TRIM_TARGET_PERCENT / 100);
+	}
+
+	/**
+	 * Remove least recently accessed entries until used size is not greater
+	 * than target size.
+	 *
+	 * @return amount of freed bytes
+	 */
+	static long evict(List<Entry> entries, long usedBytes, long targetBytes) {
+		if (usedBytes <= targetBytes) {
+			return 0;
+		}
+		Collections.sort(entries, ACCESS_TIME_COMPARATOR);
+		long freed = 0;
+		for (Entry entry : entries) {
+			if (usedBytes - freed <= targetBytes) {
+				break;
+			}
+			freed += entry.storage.evict(entry.file);
+		}
+		return freed;
+	}
+
+	private static final Comparator<Entry> ACCESS_TIME_COMPARATOR = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry lhs, Entry rhs) {
+			return lhs.accessTime < rhs.accessTime ? -1 : (lhs.accessTime == rhs.accessTime ? 0 : 1);
+		}
+	};
+
+	/**
+	 * File of disk cache with time of last access
+	 */
+	static final class Entry {
+		final AsyncCacheStorage storage;
+		final File file;
+		final long accessTime;
+
+		Entry(AsyncCacheStorage storage, File file, long accessTime) {
+			this.storage = storage;
+			this.file = file;
+			this.accessTime = accessTime;
+		}
+	}
+}
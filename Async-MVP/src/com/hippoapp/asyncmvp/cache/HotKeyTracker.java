@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts accesses to keys of {@link AsyncCacheStorage} and keeps the hottest
+ * keys in a file, so they can be prefetched into memory after application
+ * restart.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class HotKeyTracker {
+
+	/**
+	 * Maximum amount of keys which are counted. Accesses to new keys are
+	 * ignored when limit is reached.
+	 */
+	private static final int MAX_TRACKED_KEYS = 1024;
+
+	private static final int FILE_VERSION = 1;
+
+	private final File mFile;
+	private final int mHotKeysLimit;
+	private final long mSavePeriodInMillis;
+
+	private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<String, Counter>();
+
+	private volatile long mLastSaveTime = System.currentTimeMillis();
+
+	/**
+	 * @param file
+	 *            - file of hot keys
+	 * @param hotKeysLimit
+	 *            - amount of keys saved to file
+	 * @param savePeriodInMillis
+	 *            - how often hot keys should be saved
+	 */
+	HotKeyTracker(File file, int hotKeysLimit, long savePeriodInMillis) {
+		mFile = file;
+		mHotKeysLimit = hotKeysLimit;
+		mSavePeriodInMillis = savePeriodInMillis;
+	}
+
+	/**
+	 * Count access to key.
+	 *
+	 * @param isArray
+	 *            - value of key is array of values
+	 * @return {@code true} if it's time to save hot keys
+	 */
+	boolean record(String key, boolean isArray) {
+		Counter counter = mCounters.get(key);
+		if (counter == null) {
+			if (mCounters.size() >= MAX_TRACKED_KEYS) {
+				return isSaveDue();
+			}
+			Counter newCounter = new Counter(isArray);
+			counter = mCounters.putIfAbsent(key, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.incrementAndGet();
+		return isSaveDue();
+	}
+
+	void forget(String key) {
+		mCounters.remove(key);
+	}
+
+	void clear() {
+		mCounters.clear();
+	}
+
+	private boolean isSaveDue() {
+		return System.currentTimeMillis() - mLastSaveTime > mSavePeriodInMillis;
+	}
+
+	/**
+	 * Write hottest keys to file.
+	 */
+	synchronized void save() throws IOException {
+		mLastSaveTime = System.currentTimeMillis();
+		List<Map.Entry<String, Counter>> entries = new ArrayList<Map.Entry<String, Counter>>(mCounters.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Counter>>() {
+			@Override
+			public int compare(Map.Entry<String, Counter> lhs, Map.Entry<String, Counter> rhs) {
+				int l = lhs.getValue().get();
+				int r = rhs.getValue().get();
+				return l > r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		int size = Math.min(entries.size(), mHotKeysLimit);
+
+		File tempFile = new File(mFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			out.writeInt(FILE_VERSION);
+			out.writeInt(size);
+			for (int i = 0; i < size; ++i) {
+				Map.Entry<String, Counter> entry = entries.get(i);
+				out.writeUTF(entry.getKey());
+				out.writeBoolean(entry.getValue().isArray);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(mFile)) {
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Read keys saved by {@link #save()}, hottest first.
+	 *
+	 * @param keys
+	 *            - keys of single values
+	 * @param arrayKeys
+	 *            - keys of arrays of values
+	 */
+	void load(List<String> keys, List<String> arrayKeys) throws IOException {
+		if (!mFile.exists()) {
+			return;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+		try {
+			if (in.readInt() != FILE_VERSION) {
+				return;
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; ++i) {
+				String key = in.readUTF();
+				if (in.readBoolean()) {
+					arrayKeys.add(key);
+				} else {
+					keys.add(key);
+				}
+			}
+		} catch (EOFException e) {
+			// file is truncated, use keys which were read
+		} finally {
+			in.close();
+		}
+	}
+
+	private static final class Counter extends AtomicInteger {
+		private static final long serialVersionUID = 1L;
+
+		final boolean isArray;
+
+		Counter(boolean isArray) {
+			this.isArray = isArray;
+		}
+	}
+}
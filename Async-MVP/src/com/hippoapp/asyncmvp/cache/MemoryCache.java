@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+/**
+ * In-memory tier of {@link AsyncCacheStorage}. Implementations must be safe
+ * for concurrent access from different threads.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+interface MemoryCache {
+
+	/**
+	 * @return cached value or {@code null} if there is no value or value is
+	 *         expired
+	 */
+	Object get(String key);
+
+	/**
+	 * Associates value with key.
+	 *
+	 * @param weight
+	 *            - approximate size of value in bytes
+	 */
+	void put(String key, Object value, int weight);
+
+	void remove(String key);
+
+	void clear();
+
+	/**
+	 * Removes approximately <code>percent</code> of cached values, least
+	 * valuable values first.
+	 *
+	 * @param percent
+	 *            - from 0 to 100
+	 */
+	void trim(int percent);
+
+	int size();
+}
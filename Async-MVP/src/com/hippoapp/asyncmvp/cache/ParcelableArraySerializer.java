@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * {@link CacheSerializer} which stores arrays of {@link Parcelable} using
+ * {@link Parcel}. Used by {@link AsyncCacheStorage#put(String, Parcelable[])}.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class ParcelableArraySerializer implements CacheSerializer<Parcelable[]> {
+
+	private static final int VERSION = 1;
+
+	@Override
+	public int getId() {
+		return ID_PARCELABLE_ARRAY;
+	}
+
+	@Override
+	public int getVersion() {
+		// Parcel format may change with platform, so files written before
+		// OS upgrade are dropped
+		return VERSION << 16 | Build.VERSION.SDK_INT;
+	}
+
+	@Override
+	public void write(Parcelable[] value, DataOutput out) throws IOException {
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.writeString(value.getClass().getComponentType().getName());
+			parcel.writeParcelableArray(value, 0);
+			out.write(parcel.marshall());
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	@Override
+	public Parcelable[] read(ByteBuffer in) throws IOException {
+		Parcel parcel = ParcelableSerializer.unmarshall(in);
+		try {
+			String className = parcel.readString();
+			if (className == null) {
+				return null;
+			}
+			return parcel.readParcelableArray(ParcelableSerializer.classLoaderFor(className));
+		} finally {
+			parcel.recycle();
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * {@link CacheSerializer} which stores any {@link Parcelable} using
+ * {@link Parcel}. Class loaders of cached classes are looked up once and
+ * cached, so disk hits don't call {@link Class#forName(String)}.
+ *
+ * <p>
+ * <b>Note:</b> {@link Parcel} format is not stable between platform versions,
+ * use own serializer for data which should survive platform upgrade.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class ParcelableSerializer implements CacheSerializer<Parcelable> {
+
+	private static final int VERSION = 1;
+
+	private static final ConcurrentHashMap<String, ClassLoader> sClassLoaders = new ConcurrentHashMap<String, ClassLoader>();
+
+	@Override
+	public int getId() {
+		return ID_PARCELABLE;
+	}
+
+	@Override
+	public int getVersion() {
+		// Parcel format may change with platform, so files written before
+		// OS upgrade are dropped
+		return VERSION << 16 | Build.VERSION.SDK_INT;
+	}
+
+	@Override
+	public void write(Parcelable value, DataOutput out) throws IOException {
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.writeString(value.getClass().getName());
+			parcel.writeParcelable(value, 0);
+			out.write(parcel.marshall());
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	@Override
+	public Parcelable read(ByteBuffer in) throws IOException {
+		Parcel parcel = unmarshall(in);
+		try {
+			// In case this sometimes hits a null value
+			String className = parcel.readString();
+			if (className == null) {
+				return null;
+			}
+			return parcel.readParcelable(classLoaderFor(className));
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	/**
+	 * Create parcel from content of buffer. Returned parcel must be recycled.
+	 */
+	static Parcel unmarshall(ByteBuffer in) {
+		byte[] data;
+		int offset;
+		int length = in.remaining();
+		if (in.hasArray()) {
+			data = in.array();
+			offset = in.arrayOffset() + in.position();
+		} else {
+			data = new byte[length];
+			in.get(data);
+			offset = 0;
+		}
+		Parcel parcel = Parcel.obtain();
+		parcel.unmarshall(data, offset, length);
+		parcel.setDataPosition(0);
+		return parcel;
+	}
+
+	static ClassLoader classLoaderFor(String className) throws IOException {
+		ClassLoader classLoader = sClassLoaders.get(className);
+		if (classLoader == null) {
+			try {
+				classLoader = Class.forName(className).getClassLoader();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e.getMessage());
+			}
+			sClassLoaders.put(className, classLoader);
+		}
+		return classLoader;
+	}
+}
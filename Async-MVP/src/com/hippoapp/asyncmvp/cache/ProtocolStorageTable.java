@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+/**
+ * Registry which maps protocol to {@link AsyncCacheStorage}.
+ *
+ * <p>
+ * The table is an int-keyed open-addressing hash table. Readers never lock and
+ * never allocate: {@link #get(int)} reads the current {@link Snapshot} through
+ * a volatile field and probes its arrays. Writers are serialized and publish a
+ * new snapshot (copy-on-write), so a reader always sees a consistent table
+ * even while other threads register new protocols.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class ProtocolStorageTable {
+
+	private static final int INITIAL_CAPACITY = 8;
+
+	private volatile Snapshot mSnapshot = new Snapshot(INITIAL_CAPACITY);
+
+	/**
+	 * Returns storage registered for protocol or {@code null}.
+	 *
+	 * @param protocol
+	 *            - protocol of storage
+	 * @return storage or {@code null} if protocol is not registered
+	 */
+	AsyncCacheStorage get(int protocol) {
+		Snapshot snapshot = mSnapshot;
+		int[] keys = snapshot.keys;
+		AsyncCacheStorage[] values = snapshot.values;
+		int mask = keys.length - 1;
+		for (int i = mix(protocol) & mask;; i = (i + 1) & mask) {
+			AsyncCacheStorage value = values[i];
+			if (value == null) {
+				return null;
+			}
+			if (keys[i] == protocol) {
+				return value;
+			}
+		}
+	}
+
+	/**
+	 * Registers storage for protocol if protocol is not registered yet.
+	 *
+	 * @param protocol
+	 *            - protocol of storage
+	 * @param storage
+	 *            - storage to register
+	 * @return storage which is registered for protocol after this call
+	 */
+	synchronized AsyncCacheStorage putIfAbsent(int protocol, AsyncCacheStorage storage) {
+		AsyncCacheStorage current = get(protocol);
+		if (current != null) {
+			return current;
+		}
+		Snapshot snapshot = mSnapshot;
+		int capacity = snapshot.keys.length;
+		// keep load factor under 0.5 so probe sequences stay short
+		if ((snapshot.size + 1) * 2 > capacity) {
+			capacity <<= 1;
+		}
+		Snapshot newSnapshot = new Snapshot(capacity);
+		for (int i = 0; i < snapshot.values.length; ++i) {
+			if (snapshot.values[i] != null) {
+				newSnapshot.insert(snapshot.keys[i], snapshot.values[i]);
+			}
+		}
+		newSnapshot.insert(protocol, storage);
+		mSnapshot = newSnapshot;
+		return storage;
+	}
+
+	/**
+	 * Returns all registered storages.
+	 *
+	 * @return copy of registered storages
+	 */
+	AsyncCacheStorage[] values() {
+		Snapshot snapshot = mSnapshot;
+		AsyncCacheStorage[] result = new AsyncCacheStorage[snapshot.size];
+		int j = 0;
+		for (AsyncCacheStorage value : snapshot.values) {
+			if (value != null) {
+				result[j++] = value;
+			}
+		}
+		return result;
+	}
+
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Immutable after publication.
+	 */
+	private static final class Snapshot {
+		final int[] keys;
+		final AsyncCacheStorage[] values;
+		int size;
+
+		Snapshot(int capacity) {
+			keys = new int[capacity];
+			values = new AsyncCacheStorage[capacity];
+		}
+
+		void insert(int key, AsyncCacheStorage value) {
+			int mask = keys.length - 1;
+			int i = mix(key) & mask;
+			while (values[i] != null) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = key;
+			values[i] = value;
+			++size;
+		}
+	}
+}
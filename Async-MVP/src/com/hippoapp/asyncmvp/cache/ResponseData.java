@@ -21,6 +21,8 @@ package com.hippoapp.asyncmvp.cache;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.hippoapp.asyncmvp.cache.AsyncCacheStorage.Sizeable;
+
 /**
  * Entity to help to cache http responses. Contains status code of http response
  * and response body in binary data
@@ -28,7 +30,7 @@ import android.os.Parcelable;
  * @author Bnet.Android.Developer.Team
  *
  */
-public class ResponseData implements Parcelable {
+public class ResponseData implements Parcelable, Sizeable {
 	public ResponseData(int statusCode, byte[] responseBody) {
 		this.statusCode = statusCode;
 		this.responseBody = responseBody;
@@ -45,6 +47,11 @@ public class ResponseData implements Parcelable {
 		return responseBody;
 	}
 
+	@Override
+	public int getSizeInBytes() {
+		return responseBody == null ? 0 : responseBody.length;
+	}
+
 	@Override
 	public int describeContents() {
 		return 0;
@@ -53,13 +60,13 @@ public class ResponseData implements Parcelable {
 	@Override
 	public void writeToParcel(Parcel parcel, int flags) {
 		parcel.writeInt(statusCode);
-		parcel.writeString(new String(responseBody));
+		parcel.writeByteArray(responseBody);
 	}
 
 	public static final Parcelable.Creator<ResponseData> CREATOR = new Parcelable.Creator<ResponseData>() {
 		@Override
 		public ResponseData createFromParcel(Parcel source) {
-			return new ResponseData(source.readInt(), source.readString().getBytes());
+			return new ResponseData(source.readInt(), source.createByteArray());
 		}
 
 		@Override
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact {@link CacheSerializer} of {@link ResponseData}: status code,
+ * length of body and body bytes. The format doesn't depend on platform
+ * version.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class ResponseDataSerializer implements CacheSerializer<ResponseData> {
+
+	private static final int VERSION = 1;
+
+	@Override
+	public int getId() {
+		return ID_RESPONSE_DATA;
+	}
+
+	@Override
+	public int getVersion() {
+		return VERSION;
+	}
+
+	@Override
+	public void write(ResponseData value, DataOutput out) throws IOException {
+		byte[] body = value.getResponseBody();
+		out.writeInt(value.getStatusCode());
+		if (body == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(body.length);
+			out.write(body);
+		}
+	}
+
+	@Override
+	public ResponseData read(ByteBuffer in) throws IOException {
+		if (in.remaining() < 8) {
+			return null;
+		}
+		int statusCode = in.getInt();
+		int length = in.getInt();
+		if (length > in.remaining()) {
+			return null;
+		}
+		byte[] body = null;
+		if (length >= 0) {
+			body = new byte[length];
+			in.get(body);
+		}
+		return new ResponseData(statusCode, body);
+	}
+}
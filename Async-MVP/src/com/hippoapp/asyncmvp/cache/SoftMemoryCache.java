@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.cache;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * {@link MemoryCache} which keeps values by soft references, so garbage
+ * collector decides when values are evicted. When amount of values exceeds
+ * initial capacity the cache is cleared.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class SoftMemoryCache implements MemoryCache {
+
+	private final int mInitialCapacity;
+
+	private final ConcurrentMap<String, Object> mCache;
+
+	SoftMemoryCache(int initialCapacity, int expirationInMinutes, int maxConcurrentThreads) {
+		mInitialCapacity = initialCapacity;
+
+		MapMaker mapMaker = new MapMaker();
+		mapMaker.initialCapacity(initialCapacity);
+		mapMaker.expiration(expirationInMinutes * 60, TimeUnit.SECONDS);
+		mapMaker.concurrencyLevel(maxConcurrentThreads);
+		mapMaker.softValues();
+		mCache = mapMaker.makeMap();
+	}
+
+	@Override
+	public Object get(String key) {
+		return mCache.get(key);
+	}
+
+	@Override
+	public void put(String key, Object value, int weight) {
+		if (mCache.size() > mInitialCapacity) {
+			mCache.clear();
+		}
+		mCache.put(key, value);
+	}
+
+	@Override
+	public void remove(String key) {
+		mCache.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		mCache.clear();
+	}
+
+	@Override
+	public void trim(int percent) {
+		// soft values don't track access order, so remove values in iteration
+		// order
+		int toRemove = mCache.size() * percent / 100;
+		Iterator<String> iterator = mCache.keySet().iterator();
+		while (toRemove > 0 && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			--toRemove;
+		}
+	}
+
+	@Override
+	public int size() {
+		return mCache.size();
+	}
+}
@@ -28,11 +28,13 @@ import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 import android.app.Application;
 import android.content.Context;
 import android.util.Log;
 
+import com.hippoapp.asyncmvp.cache.AsyncCacheClient;
 import com.hippoapp.asyncmvp.core.PreferencesManager.BackupPreference;
 import com.hippoapp.asyncmvp.core.PreferencesManager.KeysPreference;
 import com.hippoapp.asyncmvp.core.Presenter.ModelLayer;
@@ -83,7 +85,7 @@ import dalvik.system.DexFile;
  * Numeric nonzero annotation parameter nameInt is used to identify a layer or a
  * module within the system. Each module is executed in its own thread to
  * achieve asynchronous data processing. Current module execution status can be
- * accessed via {@link ModelLayerInterface#getStatus()} method. Check out
+ * accessed via {@link Presenter#getLayerStatus(int)} method. Check out
  * {@link Presenter} for details. High level of development flexibility is
  * achieved by using this module system. Developers can distribute their modules
  * as an open-source product or as a pre-compied libaries. Current framework
@@ -127,8 +129,8 @@ import dalvik.system.DexFile;
  *
  * <p>
  * The framework also provides a notifications of establishing and losing
- * internet connection. Check out {@link ConnectivityChangedReceiver} class for
- * details.
+ * internet connection. Check out {@link ConnectivityChangedReceiver} and
+ * {@link ConnectivityMonitor} classes for details.
  *
  * To make your app supporting all those features you should write following in
  * <code>AndroidManifest.xml</code> application class name
@@ -170,9 +172,10 @@ public class AsyncApplication extends Application {
 
 	/**
 	 * Set of objects which want to get notification about {
-	 * {@link #onLowMemory()} method execution.
+	 * {@link #onLowMemory()} method execution. Listeners can be added from any
+	 * thread, for example when cache storage is initialized.
 	 */
-	private HashSet<OnLowMemoryListener> mLowMemoryListeners = new HashSet<OnLowMemoryListener>();
+	private Set<OnLowMemoryListener> mLowMemoryListeners = new CopyOnWriteArraySet<OnLowMemoryListener>();
 
 	@Override
 	public void onCreate() {
@@ -185,6 +188,9 @@ public class AsyncApplication extends Application {
 	 *
 	 */
 	private void init() {
+		// layers and their clients register connectivity listeners in init
+		ConnectivityMonitor.initInstance(this);
+
 		List<ModelLayerInterface> listInboxLayers = new ArrayList<ModelLayerInterface>();
 
 		Set<String> backupPreference = new HashSet<String>();
@@ -257,6 +263,9 @@ public class AsyncApplication extends Application {
 		}
 		Presenter.initInstance(this, listInboxLayers);
 		PreferencesManager.initInstance(this, backupPreference);
+		// caches and their serializers are initialized by now, prefetch
+		// hot values of previous run
+		AsyncCacheClient.warmUp();
 	}
 
 	/**
@@ -21,35 +21,25 @@ package com.hippoapp.asyncmvp.core;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 
 import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
 import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
 
 /**
- * Broadcast receiver which gets actual connection state, saves it in preference
- * by {@link AsyncMvpConstants#PREF_CONNECTION_STATE} key and send changed state
- * to model and view by {@link AsyncMvpPresenterProtocol#P_CONNECTION_STATE} and
+ * Broadcast receiver which reports connectivity changes to
+ * {@link ConnectivityMonitor}. The monitor debounces them, saves actual
+ * connection state in preference by
+ * {@link AsyncMvpConstants#PREF_CONNECTION_STATE} key and send changed state to
+ * model and view by {@link AsyncMvpPresenterProtocol#P_CONNECTION_STATE} and
  * {@link AsyncMvpPresenterProtocol#V_CONNECTION_STATE} protocols
  *
  */
-public class ConnectivityChangedReceiver extends BroadcastReceiver implements AsyncMvpConstants, AsyncMvpPresenterProtocol {
+public class ConnectivityChangedReceiver extends BroadcastReceiver {
 
 	private static final String TAG = ConnectivityChangedReceiver.class.getSimpleName();
 
 	@Override
 	public void onReceive(Context context, Intent intent) {
-		ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
-
-		// Check if we are connected to an active data network.
-		NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-		boolean isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
-
-		// reorganize async-mvp constants
-		PreferencesManager.getInst().put(PREF_CONNECTION_STATE, isConnected);
-		// notify by sending message by protocol
-		Presenter.getInst().sendModelMessage(V_CONNECTION_STATE, isConnected ? Boolean.TRUE : Boolean.FALSE);
-		Presenter.getInst().sendModelMessage(P_CONNECTION_STATE, isConnected ? Boolean.TRUE : Boolean.FALSE);
+		ConnectivityMonitor.getInst().onConnectivityBroadcast();
 	}
 }
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
+import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
+
+/**
+ * Keeps actual connection state of device. {@link ConnectivityChangedReceiver}
+ * reports every connectivity broadcast, the monitor waits until network is
+ * stable for {@link #DEBOUNCE_IN_MILLIS} and publishes state only if it really
+ * differs from previous one. So handoffs between Wi-Fi and cellular and short
+ * flaps don't reach layers.
+ *
+ * <p>
+ * State is published by {@link AsyncMvpPresenterProtocol#V_CONNECTION_STATE}
+ * and {@link AsyncMvpPresenterProtocol#P_CONNECTION_STATE} protocols: in
+ * {@link android.os.Message#obj} - {@link Boolean} connection state, in
+ * {@link android.os.Message#arg1} - network type of {@link ConnectivityManager}
+ * or {@link #TYPE_NONE}, in {@link android.os.Message#arg2} - 1 if network is
+ * metered. Objects which are not layers may use
+ * {@link #addOnConnectivityChangedListener(OnConnectivityChangedListener)}.
+ *
+ * <p>
+ * Monitor is initialized by {@link AsyncApplication} before layers, so layers
+ * and objects created in their <code>init</code> may register listeners.
+ * Until first broadcast is published the monitor reports state read at
+ * initialization.
+ *
+ * <p>
+ * Mobile networks are considered metered, Wi-Fi and Ethernet are not.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class ConnectivityMonitor implements AsyncMvpConstants, AsyncMvpPresenterProtocol {
+
+	/**
+	 * Network type when there is no connection
+	 */
+	public static final int TYPE_NONE = -1;
+
+	/**
+	 * Time which network state must be stable to be published
+	 */
+	public static final long DEBOUNCE_IN_MILLIS = 2000;
+
+	private static volatile ConnectivityMonitor sInstance;
+
+	private final Context mContext;
+
+	private final Handler mHandler;
+
+	/**
+	 * Listeners are kept in weak references, so registered objects are not
+	 * leaked by the monitor
+	 */
+	private final List<WeakReference<OnConnectivityChangedListener>> mListeners = new CopyOnWriteArrayList<WeakReference<OnConnectivityChangedListener>>();
+
+	private volatile boolean isPublished;
+	private volatile boolean isConnected;
+	private volatile int mNetworkType = TYPE_NONE;
+	private volatile boolean isMetered;
+
+	private final Runnable mPublishTask = new Runnable() {
+		@Override
+		public void run() {
+			publishIfChanged();
+		}
+	};
+
+	public static final void initInstance(Context context) {
+		sInstance = new ConnectivityMonitor(context);
+	}
+
+	public static final ConnectivityMonitor getInst() {
+		return sInstance;
+	}
+
+	private ConnectivityMonitor(Context context) {
+		mContext = context;
+		mHandler = new Handler(Looper.getMainLooper());
+		ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+		isConnected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+		mNetworkType = isConnected ? activeNetwork.getType() : TYPE_NONE;
+		isMetered = isConnected && isMeteredType(mNetworkType);
+	}
+
+	/**
+	 * Called on every connectivity broadcast. The first call publishes state
+	 * immediately, next calls publish it when network is stable.
+	 */
+	public void onConnectivityBroadcast() {
+		mHandler.removeCallbacks(mPublishTask);
+		if (isPublished) {
+			mHandler.postDelayed(mPublishTask, DEBOUNCE_IN_MILLIS);
+		} else {
+			mHandler.post(mPublishTask);
+		}
+	}
+
+	public boolean isConnected() {
+		return isConnected;
+	}
+
+	/**
+	 * @return network type of {@link ConnectivityManager} or
+	 *         {@link #TYPE_NONE}
+	 */
+	public int getNetworkType() {
+		return mNetworkType;
+	}
+
+	public boolean isMetered() {
+		return isMetered;
+	}
+
+	/**
+	 * Add listener. Monitor keeps weak reference to listener, so the caller
+	 * must keep strong one.
+	 */
+	public synchronized void addOnConnectivityChangedListener(OnConnectivityChangedListener listener) {
+		for (WeakReference<OnConnectivityChangedListener> reference : mListeners) {
+			if (reference.get() == listener) {
+				return;
+			}
+		}
+		mListeners.add(new WeakReference<OnConnectivityChangedListener>(listener));
+	}
+
+	public synchronized void removeOnConnectivityChangedListener(OnConnectivityChangedListener listener) {
+		for (WeakReference<OnConnectivityChangedListener> reference : mListeners) {
+			OnConnectivityChangedListener registered = reference.get();
+			if (registered == null || registered == listener) {
+				mListeners.remove(reference);
+			}
+		}
+	}
+
+	private void publishIfChanged() {
+		ConnectivityManager cm = (ConnectivityManager) mContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+		// state is read again, broadcast may be outdated after debounce
+		NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+		boolean connected = activeNetwork != null && activeNetwork.isConnectedOrConnecting();
+		int networkType = connected ? activeNetwork.getType() : TYPE_NONE;
+		boolean metered = connected && isMeteredType(networkType);
+
+		if (isPublished && connected == isConnected && networkType == mNetworkType && metered == isMetered) {
+			return;
+		}
+		boolean isConnectionChanged = !isPublished || connected != isConnected;
+		isPublished = true;
+		isConnected = connected;
+		mNetworkType = networkType;
+		isMetered = metered;
+
+		PreferencesManager preferencesManager = PreferencesManager.getInst();
+		if (isConnectionChanged && preferencesManager != null) {
+			preferencesManager.put(PREF_CONNECTION_STATE, connected);
+		}
+		Boolean state = connected ? Boolean.TRUE : Boolean.FALSE;
+		int meteredFlag = metered ? 1 : 0;
+		Presenter presenter = Presenter.getInst();
+		if (presenter != null) {
+			presenter.sendModelMessage(V_CONNECTION_STATE, networkType, meteredFlag, state);
+			presenter.sendModelMessage(P_CONNECTION_STATE, networkType, meteredFlag, state);
+		}
+		for (WeakReference<OnConnectivityChangedListener> reference : mListeners) {
+			OnConnectivityChangedListener listener = reference.get();
+			if (listener == null) {
+				// owner is collected
+				mListeners.remove(reference);
+			} else {
+				listener.onConnectivityChanged(connected, networkType, metered);
+			}
+		}
+	}
+
+	/**
+	 * ConnectivityManager.TYPE_ETHERNET, available since API 13
+	 */
+	private static final int TYPE_ETHERNET = 9;
+
+	private static boolean isMeteredType(int networkType) {
+		if (networkType == ConnectivityManager.TYPE_WIFI) {
+			return false;
+		}
+		return !(android.os.Build.VERSION.SDK_INT >= 13 && networkType == TYPE_ETHERNET);
+	}
+
+	/**
+	 * Objects that want to be notified about connection state transitions
+	 * should implement this interface
+	 */
+	public interface OnConnectivityChangedListener {
+		/**
+		 * Called on main thread when connection state, network type or metered
+		 * status is changed
+		 *
+		 * @param isConnected
+		 *            - connection state
+		 * @param networkType
+		 *            - network type of {@link ConnectivityManager} or
+		 *            {@link ConnectivityMonitor#TYPE_NONE}
+		 * @param isMetered
+		 *            - true if traffic may be charged
+		 */
+		void onConnectivityChanged(boolean isConnected, int networkType, boolean isMetered);
+	}
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dispatch core of {@link Presenter}: routes model messages to layer inboxes
+ * and drains every inbox on executor of its layer. Engine doesn't depend on
+ * <code>android.os</code>, so message routing can be tested and measured on
+ * plain JVM.
+ *
+ * <p>
+ * Executor of layer is a backend of engine. Presenter uses Looper backend,
+ * executor which posts to Handler of layer thread. On plain JVM use
+ * {@link #newLayerExecutor(String)}, java.util.concurrent single thread
+ * executor. Executor of layer must run tasks one by one, layer processes
+ * messages consequentially.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public final class DispatchEngine {
+
+	/**
+	 * Receives messages of layer on its executor thread
+	 */
+	public interface Target {
+		/**
+		 * @param data
+		 *            - additional info, <code>Bundle</code> on Android
+		 */
+		void dispatch(int what, int arg1, int arg2, Object obj, Object data);
+	}
+
+	/**
+	 * Receives state changes of inboxes. Methods are called on thread of
+	 * sender or of layer and must not wait for layers.
+	 * {@link #onDeadlineMiss(int, int, long)} is called under inbox lock, so
+	 * it must not send messages. {@link #onSaturationChanged(int, boolean)} is
+	 * called after inbox lock is released, it may notify layers by
+	 * {@link DispatchEngine#sendExcept(int, int, int, int, Object, Object, Priority)},
+	 * which never waits.
+	 */
+	public interface Listener {
+		void onSaturationChanged(int name, boolean isSaturated);
+
+		void onDeadlineMiss(int name, int what, long lateness);
+	}
+
+	/**
+	 * Model message inside of engine
+	 */
+	static final class Envelope {
+		int what;
+		int arg1;
+		int arg2;
+		Object obj;
+		Object data;
+
+		/**
+		 * {@link System#nanoTime()} of sending, 0 if tracing is off
+		 */
+		long enqueueTime;
+
+		Envelope(int what, int arg1, int arg2, Object obj, Object data) {
+			this.what = what;
+			this.arg1 = arg1;
+			this.arg2 = arg2;
+			this.obj = obj;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Layer which is processing message on current thread
+	 */
+	private static final ThreadLocal<Layer> sCurrentLayer = new ThreadLocal<Layer>();
+
+	private final Listener mListener;
+
+	/**
+	 * Layers are never changed after publication, addLayer replaces array
+	 */
+	private volatile Layer[] mLayers = new Layer[0];
+
+	/**
+	 * {@code null} when tracing is off
+	 */
+	private volatile MessageTracer mTracer;
+
+	public DispatchEngine(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Monotonic clock of engine, on Android it is the same clock as
+	 * <code>SystemClock.uptimeMillis()</code>
+	 */
+	public static long uptimeMillis() {
+		return System.nanoTime() / 1000000;
+	}
+
+	/**
+	 * Pure java backend: single thread executor with named daemon thread
+	 *
+	 * @param name
+	 *            - name of thread
+	 */
+	public static ExecutorService newLayerExecutor(final String name) {
+		return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+	/**
+	 * Turn tracing of messages on, {@code null} turns it off
+	 */
+	public void setTracer(MessageTracer tracer) {
+		mTracer = tracer;
+	}
+
+	/**
+	 * Register layer
+	 *
+	 * @param name
+	 *            - nameInt of layer, see {@link Presenter.ModelLayer}
+	 * @param executor
+	 *            - runs tasks of layer one by one
+	 * @param target
+	 *            - receiver of messages
+	 */
+	public synchronized void addLayer(int name, Executor executor, Target target) {
+		Layer[] layers = new Layer[mLayers.length + 1];
+		System.arraycopy(mLayers, 0, layers, 0, mLayers.length);
+		layers[mLayers.length] = new Layer(mLayers.length, name, executor, target);
+		mLayers = layers;
+	}
+
+	/**
+	 * Send message to all layers
+	 *
+	 * @param deadline
+	 *            - time in milliseconds from now, while message is useful, 0
+	 *            means no deadline
+	 */
+	public void send(int what, int arg1, int arg2, Object obj, Object data, Priority priority, long deadline) {
+		long deadlineTime = deadline > 0 ? uptimeMillis() + deadline : LayerInbox.NO_DEADLINE;
+		long enqueueTime = mTracer == null ? 0 : System.nanoTime();
+		for (Layer layer : mLayers) {
+			Envelope envelope = new Envelope(what, arg1, arg2, obj, data);
+			envelope.enqueueTime = enqueueTime;
+			layer.offer(envelope, priority, deadlineTime, false);
+		}
+	}
+
+	/**
+	 * Send status notice to all layers except layers with nameInt
+	 * <code>name</code>. Sender never waits: notice which doesn't fit into
+	 * bounded inbox is dropped whatever the policy of inbox is, so it is safe
+	 * to call from {@link Listener} on any thread.
+	 */
+	public void sendExcept(int name, int what, int arg1, int arg2, Object obj, Object data, Priority priority) {
+		long enqueueTime = mTracer == null ? 0 : System.nanoTime();
+		for (Layer layer : mLayers) {
+			if (layer.name != name) {
+				Envelope envelope = new Envelope(what, arg1, arg2, obj, data);
+				envelope.enqueueTime = enqueueTime;
+				layer.offer(envelope, priority, LayerInbox.NO_DEADLINE, true);
+			}
+		}
+	}
+
+	/**
+	 * Limit inbox of layer, see
+	 * {@link Presenter#setInboxBound(int, int, OverflowPolicy)}
+	 */
+	public void setBound(int name, int capacity, OverflowPolicy policy) {
+		for (Layer layer : mLayers) {
+			if (layer.name != 0 && layer.name == name) {
+				layer.inbox.setBound(capacity, policy);
+			}
+		}
+	}
+
+	/**
+	 * @return snapshot of layer state or {@code null} if there is no such
+	 *         layer
+	 */
+	public LayerStatus getStatus(int name) {
+		for (Layer layer : mLayers) {
+			if (layer.name != 0 && layer.name == name) {
+				return layer.tracker.snapshot(name);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Drop queued messages and release blocked senders. Executors are not
+	 * stopped, they belong to caller.
+	 */
+	public void close() {
+		for (Layer layer : mLayers) {
+			layer.inbox.close();
+		}
+	}
+
+	/**
+	 * Inbox and tracker of layer. As a task, handles one message of inbox per
+	 * executor iteration, so other tasks of layer executor are not starved.
+	 */
+	private final class Layer implements Runnable {
+		/**
+		 * Position of layer in engine, unique even for layers without nameInt
+		 */
+		final int index;
+		final int name;
+		final Executor executor;
+		final Target target;
+		final LayerTracker tracker = new LayerTracker();
+		final LayerInbox inbox;
+
+		private final int[] mPollFlags = new int[1];
+
+		Layer(int index, int name, Executor executor, Target target) {
+			this.index = index;
+			this.name = name;
+			this.executor = executor;
+			this.target = target;
+			inbox = new LayerInbox(tracker, name, mListener);
+		}
+
+		void offer(Envelope envelope, Priority priority, long deadline, boolean isNotice) {
+			int mode;
+			if (isNotice) {
+				mode = LayerInbox.OFFER_OR_DROP;
+			} else if (sCurrentLayer.get() == this) {
+				// layer which sends message to itself must not wait for itself
+				mode = LayerInbox.OFFER_EXCEEDING;
+			} else {
+				mode = LayerInbox.OFFER_BLOCKING;
+			}
+			int flags = inbox.offer(envelope, priority, deadline, mode);
+			if ((flags & LayerInbox.WAKE_UP) != 0) {
+				schedule();
+			}
+			if ((flags & LayerInbox.SATURATED) != 0) {
+				mListener.onSaturationChanged(name, true);
+			}
+		}
+
+		@Override
+		public void run() {
+			mPollFlags[0] = 0;
+			Envelope envelope = inbox.poll(mPollFlags);
+			if (envelope == null) {
+				return;
+			}
+			schedule();
+			if ((mPollFlags[0] & LayerInbox.RELEASED) != 0) {
+				mListener.onSaturationChanged(name, false);
+			}
+			int what = envelope.what;
+			MessageTracer tracer = envelope.enqueueTime == 0 ? null : mTracer;
+			long startNanos = tracer == null ? 0 : System.nanoTime();
+			long startTime = tracker.onStart(what);
+			Layer previous = sCurrentLayer.get();
+			sCurrentLayer.set(this);
+			try {
+				target.dispatch(what, envelope.arg1, envelope.arg2, envelope.obj, envelope.data);
+			} finally {
+				sCurrentLayer.set(previous);
+				tracker.onFinish(what, startTime);
+				if (tracer != null) {
+					tracer.record(index, name, what, envelope.enqueueTime, startNanos, System.nanoTime());
+				}
+			}
+		}
+
+		private void schedule() {
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				// executor is shut down, layer is gone
+				inbox.close();
+			}
+		}
+	}
+}
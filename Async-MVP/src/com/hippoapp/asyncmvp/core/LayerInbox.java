@@ -0,0 +1,356 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import com.hippoapp.asyncmvp.core.DispatchEngine.Envelope;
+import com.hippoapp.asyncmvp.core.DispatchEngine.Listener;
+
+/**
+ * Queue of messages of one model layer. Presenter offers messages to inbox
+ * and layer thread drains it one message per Looper iteration. Inbox may be
+ * bounded, then {@link OverflowPolicy} defines what happens with a message
+ * which doesn't fit.
+ *
+ * <p>
+ * Each {@link Priority} has its own FIFO lane, layer takes messages of more
+ * urgent lane first. Message may have deadline, it is dropped instead of
+ * dispatch when layer takes it too late.
+ *
+ * <p>
+ * Methods which change state return flags, so caller notifies other
+ * components after inbox lock is released.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class LayerInbox {
+
+	/**
+	 * Message is queued and layer thread must be woken up
+	 */
+	static final int WAKE_UP = 1;
+
+	/**
+	 * Inbox became saturated
+	 */
+	static final int SATURATED = 2;
+
+	/**
+	 * Saturated inbox was drained to half of capacity
+	 */
+	static final int RELEASED = 4;
+
+	/**
+	 * Deadline of message, which has no deadline
+	 */
+	static final long NO_DEADLINE = Long.MAX_VALUE;
+
+	/**
+	 * Offer mode: sender waits for free space if policy is
+	 * {@link OverflowPolicy#BLOCK}
+	 */
+	static final int OFFER_BLOCKING = 0;
+
+	/**
+	 * Offer mode: sender never waits, inbox exceeds capacity instead. Used
+	 * when layer sends message to itself.
+	 */
+	static final int OFFER_EXCEEDING = 1;
+
+	/**
+	 * Offer mode: sender never waits, message which doesn't fit is dropped
+	 * whatever the policy is. Used for status notices.
+	 */
+	static final int OFFER_OR_DROP = 2;
+
+	private static final Priority[] PRIORITIES = Priority.values();
+
+	/**
+	 * Lanes in order of {@link Priority}, the most urgent is first
+	 */
+	private final Lane[] mLanes = new Lane[PRIORITIES.length];
+
+	private int mSize;
+
+	private final LayerTracker mTracker;
+
+	private final int mName;
+
+	private final Listener mListener;
+
+	/**
+	 * 0 means unbounded
+	 */
+	private int mCapacity;
+
+	private OverflowPolicy mPolicy = OverflowPolicy.DROP_NEWEST;
+
+	private boolean isDrainScheduled;
+	private boolean isSaturated;
+	private boolean isClosed;
+
+	LayerInbox(LayerTracker tracker, int name, Listener listener) {
+		mTracker = tracker;
+		mName = name;
+		mListener = listener;
+		for (int i = 0; i < mLanes.length; ++i) {
+			mLanes[i] = new Lane();
+		}
+	}
+
+	synchronized void setBound(int capacity, OverflowPolicy policy) {
+		mCapacity = capacity;
+		mPolicy = policy;
+		// blocked senders may fit now
+		notifyAll();
+	}
+
+	/**
+	 * Put message to inbox according to overflow policy.
+	 *
+	 * @param priority
+	 *            - lane of message
+	 * @param deadline
+	 *            - {@link DispatchEngine#uptimeMillis()} after which message is
+	 *            useless or {@link #NO_DEADLINE}
+	 * @param mode
+	 *            - {@link #OFFER_BLOCKING}, {@link #OFFER_EXCEEDING} or
+	 *            {@link #OFFER_OR_DROP}
+	 * @return flags {@link #WAKE_UP}, {@link #SATURATED}
+	 */
+	synchronized int offer(Envelope message, Priority priority, long deadline, int mode) {
+		int flags = 0;
+		if (isClosed) {
+			return flags;
+		}
+		if (mCapacity > 0 && mSize >= mCapacity) {
+			if (!isSaturated) {
+				isSaturated = true;
+				flags |= SATURATED;
+			}
+			if (mode == OFFER_OR_DROP) {
+				drop(message, false);
+				return flags;
+			}
+			switch (mPolicy) {
+			case DROP_NEWEST:
+				drop(message, false);
+				return flags;
+			case DROP_OLDEST:
+				dropLeastUrgent();
+				break;
+			case COALESCE:
+				if (replace(message)) {
+					return flags;
+				}
+				dropLeastUrgent();
+				break;
+			case BLOCK:
+				if (mode == OFFER_EXCEEDING) {
+					// exceed capacity rather than deadlock layer
+					break;
+				}
+				try {
+					while (!isClosed && mCapacity > 0 && mSize >= mCapacity) {
+						wait();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					drop(message, false);
+					return flags;
+				}
+				if (isClosed) {
+					return flags;
+				}
+				break;
+			}
+		} else if (mPolicy == OverflowPolicy.COALESCE && mCapacity > 0 && replace(message)) {
+			return flags;
+		}
+		if (deadline != NO_DEADLINE && DispatchEngine.uptimeMillis() > deadline) {
+			missDeadline(message, deadline, false);
+			return flags;
+		}
+		mTracker.onEnqueue(message.what);
+		mLanes[priority.ordinal()].addLast(message, deadline);
+		++mSize;
+		if (!isDrainScheduled) {
+			isDrainScheduled = true;
+			flags |= WAKE_UP;
+		}
+		return flags;
+	}
+
+	/**
+	 * Take next message on layer thread. Messages with missed deadline are
+	 * dropped.
+	 *
+	 * @param flags
+	 *            - out parameter, flags[0] is set to {@link #RELEASED} when
+	 *            saturation is over
+	 * @return message or {@code null} if inbox is empty, then next offer wakes
+	 *         layer up
+	 */
+	synchronized Envelope poll(int[] flags) {
+		Envelope message = null;
+		long now = 0;
+		for (int i = 0; i < mLanes.length && message == null;) {
+			Lane lane = mLanes[i];
+			if (lane.size == 0) {
+				++i;
+				continue;
+			}
+			long deadline = lane.firstDeadline();
+			message = lane.pollFirst();
+			--mSize;
+			if (deadline != NO_DEADLINE) {
+				if (now == 0) {
+					now = DispatchEngine.uptimeMillis();
+				}
+				if (now > deadline) {
+					missDeadline(message, deadline, true);
+					message = null;
+				}
+			}
+		}
+		if (mCapacity > 0) {
+			notifyAll();
+			if (isSaturated && mSize <= mCapacity / 2) {
+				isSaturated = false;
+				flags[0] |= RELEASED;
+			}
+		}
+		if (message == null) {
+			isDrainScheduled = false;
+		}
+		return message;
+	}
+
+	/**
+	 * Remove all messages and release blocked senders
+	 */
+	synchronized void close() {
+		isClosed = true;
+		for (Lane lane : mLanes) {
+			while (lane.size > 0) {
+				drop(lane.pollFirst(), true);
+			}
+		}
+		mSize = 0;
+		notifyAll();
+	}
+
+	/**
+	 * Replace payload of queued message with the same what and arg1
+	 *
+	 * @return true if message was coalesced
+	 */
+	private boolean replace(Envelope message) {
+		for (Lane lane : mLanes) {
+			Envelope queued = lane.findLast(message.what, message.arg1);
+			if (queued != null) {
+				queued.arg2 = message.arg2;
+				queued.obj = message.obj;
+				queued.data = message.data;
+				mTracker.onCoalesce();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drop oldest message of the least urgent lane
+	 */
+	private void dropLeastUrgent() {
+		for (int i = mLanes.length - 1; i >= 0; --i) {
+			if (mLanes[i].size > 0) {
+				drop(mLanes[i].pollFirst(), true);
+				--mSize;
+				return;
+			}
+		}
+	}
+
+	private void drop(Envelope message, boolean isQueued) {
+		mTracker.onDrop(message.what, isQueued);
+	}
+
+	private void missDeadline(Envelope message, long deadline, boolean isQueued) {
+		mTracker.onDeadlineMiss(message.what, isQueued);
+		mListener.onDeadlineMiss(mName, message.what, DispatchEngine.uptimeMillis() - deadline);
+	}
+
+	/**
+	 * FIFO ring of messages and their deadlines, grows when full
+	 */
+	private static final class Lane {
+		private Envelope[] mMessages = new Envelope[8];
+		private long[] mDeadlines = new long[8];
+		private int mHead;
+		int size;
+
+		void addLast(Envelope message, long deadline) {
+			if (size == mMessages.length) {
+				grow();
+			}
+			int i = (mHead + size) & (mMessages.length - 1);
+			mMessages[i] = message;
+			mDeadlines[i] = deadline;
+			++size;
+		}
+
+		long firstDeadline() {
+			return mDeadlines[mHead];
+		}
+
+		Envelope pollFirst() {
+			Envelope message = mMessages[mHead];
+			mMessages[mHead] = null;
+			mHead = (mHead + 1) & (mMessages.length - 1);
+			--size;
+			return message;
+		}
+
+		Envelope findLast(int what, int arg1) {
+			int mask = mMessages.length - 1;
+			for (int j = size - 1; j >= 0; --j) {
+				Envelope message = mMessages[(mHead + j) & mask];
+				if (message.what == what && message.arg1 == arg1) {
+					return message;
+				}
+			}
+			return null;
+		}
+
+		private void grow() {
+			int capacity = mMessages.length;
+			Envelope[] messages = new Envelope[capacity << 1];
+			long[] deadlines = new long[capacity << 1];
+			for (int j = 0; j < size; ++j) {
+				int i = (mHead + j) & (capacity - 1);
+				messages[j] = mMessages[i];
+				deadlines[j] = mDeadlines[i];
+			}
+			mMessages = messages;
+			mDeadlines = deadlines;
+			mHead = 0;
+		}
+	}
+}
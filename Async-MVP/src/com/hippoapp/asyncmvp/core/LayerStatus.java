@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of model layer state which is tracked by Presenter. Time values
+ * are in milliseconds.
+ *
+ * @author Bnet.Android.Developer.Team
+ */
+public class LayerStatus {
+	private final int mName;
+	private final int[] mActiveProtocols;
+	private final long mQueueDepth;
+	private final long mProcessedCount;
+	private final long mDroppedCount;
+	private final long mCoalescedCount;
+	private final long mDeadlineMissCount;
+	private final long mLastProcessingTime;
+	private final long mLastFinishTime;
+	private final int mCurrentProtocol;
+	private final long mCurrentProcessingTime;
+	private final long[] mHistogram;
+
+	LayerStatus(int name, int[] activeProtocols, long queueDepth, long processedCount, long droppedCount,
+			long coalescedCount, long deadlineMissCount, long lastProcessingTime, long lastFinishTime,
+			int currentProtocol, long currentProcessingTime, long[] histogram) {
+		mName = name;
+		mActiveProtocols = activeProtocols;
+		mQueueDepth = queueDepth;
+		mProcessedCount = processedCount;
+		mDroppedCount = droppedCount;
+		mCoalescedCount = coalescedCount;
+		mDeadlineMissCount = deadlineMissCount;
+		mLastProcessingTime = lastProcessingTime;
+		mLastFinishTime = lastFinishTime;
+		mCurrentProtocol = currentProtocol;
+		mCurrentProcessingTime = currentProcessingTime;
+		mHistogram = histogram;
+	}
+
+	/**
+	 * @return nameInt of layer
+	 */
+	public int getName() {
+		return mName;
+	}
+
+	/**
+	 * @return protocols which are queued or processed by layer
+	 */
+	public int[] getActiveProtocols() {
+		return mActiveProtocols.clone();
+	}
+
+	/**
+	 * @return amount of messages which are queued or processed by layer
+	 */
+	public long getQueueDepth() {
+		return mQueueDepth;
+	}
+
+	public long getProcessedCount() {
+		return mProcessedCount;
+	}
+
+	/**
+	 * @return amount of messages dropped because inbox was full
+	 */
+	public long getDroppedCount() {
+		return mDroppedCount;
+	}
+
+	/**
+	 * @return amount of messages merged into queued messages
+	 */
+	public long getCoalescedCount() {
+		return mCoalescedCount;
+	}
+
+	/**
+	 * @return amount of messages dropped because their deadline passed
+	 *         before layer took them
+	 */
+	public long getDeadlineMissCount() {
+		return mDeadlineMissCount;
+	}
+
+	/**
+	 * @return processing time of last processed message
+	 */
+	public long getLastProcessingTime() {
+		return mLastProcessingTime;
+	}
+
+	/**
+	 * @return {@link DispatchEngine#uptimeMillis()} when last
+	 *         message was processed, 0 if there were no messages
+	 */
+	public long getLastFinishTime() {
+		return mLastFinishTime;
+	}
+
+	/**
+	 * @return protocol which is processed now, 0 if layer is idle
+	 */
+	public int getCurrentProtocol() {
+		return mCurrentProtocol;
+	}
+
+	/**
+	 * @return how long current message is processed, 0 if layer is idle.
+	 *         Big value means layer is stuck.
+	 */
+	public long getCurrentProcessingTime() {
+		return mCurrentProcessingTime;
+	}
+
+	/**
+	 * @return amount of processed messages by processing time: bucket 0 -
+	 *         under 1 ms, bucket i - from 2^(i-1) to 2^i ms, the last
+	 *         bucket - all longer times
+	 */
+	public long[] getHistogram() {
+		return mHistogram.clone();
+	}
+
+	@Override
+	public String toString() {
+		return "LayerStatus [name=" + mName + ", activeProtocols=" + Arrays.toString(mActiveProtocols)
+				+ ", queueDepth=" + mQueueDepth + ", processed=" + mProcessedCount + ", dropped=" + mDroppedCount
+				+ ", coalesced=" + mCoalescedCount + ", deadlineMisses=" + mDeadlineMissCount + ", lastProcessingTime="
+				+ mLastProcessingTime + ", currentProtocol=" + mCurrentProtocol + ", currentProcessingTime="
+				+ mCurrentProcessingTime + "]";
+	}
+}
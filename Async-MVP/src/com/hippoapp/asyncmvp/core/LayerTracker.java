@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks messages of one model layer: protocols which are queued or processed,
+ * queue depth, last processing time and histogram of processing times.
+ * Senders update tracker from any thread, layer thread updates it when message
+ * is processed. All counters are lock-free, so {@link #snapshot(int)} may be
+ * taken from any thread without disturbing layer.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+class LayerTracker {
+
+	/**
+	 * Bucket 0 counts processing times under 1 ms, bucket i counts times from
+	 * 2^(i-1) to 2^i ms, the last bucket counts all longer times
+	 */
+	static final int HISTOGRAM_BUCKETS = 16;
+
+	/**
+	 * Capacity of in-flight protocol table, protocols which don't fit are not
+	 * tracked
+	 */
+	private static final int MAX_TRACKED_PROTOCOLS = 128;
+
+	private static final int EMPTY_KEY = Integer.MIN_VALUE;
+
+	/**
+	 * Open-addressing table of protocol counters. Key slot is claimed by CAS
+	 * once and never released, counter of protocol without in-flight messages
+	 * is 0.
+	 */
+	private final AtomicIntegerArray mKeys = new AtomicIntegerArray(MAX_TRACKED_PROTOCOLS);
+	private final AtomicIntegerArray mCounts = new AtomicIntegerArray(MAX_TRACKED_PROTOCOLS);
+
+	private final AtomicLong mQueueDepth = new AtomicLong();
+	private final AtomicLong mProcessedCount = new AtomicLong();
+	private final AtomicLong mDroppedCount = new AtomicLong();
+	private final AtomicLong mCoalescedCount = new AtomicLong();
+	private final AtomicLong mDeadlineMissCount = new AtomicLong();
+	private final AtomicLongArray mHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+	private volatile long mLastProcessingTime;
+	private volatile long mLastFinishTime;
+
+	/**
+	 * Protocol which is processed now and start time of processing, 0 if layer
+	 * is idle
+	 */
+	private volatile int mCurrentProtocol;
+	private volatile long mCurrentStartTime;
+
+	LayerTracker() {
+		for (int i = 0; i < MAX_TRACKED_PROTOCOLS; ++i) {
+			mKeys.set(i, EMPTY_KEY);
+		}
+	}
+
+	/**
+	 * Called by sender before message is queued
+	 */
+	void onEnqueue(int what) {
+		mQueueDepth.incrementAndGet();
+		int slot = slotOf(what, true);
+		if (slot >= 0) {
+			mCounts.incrementAndGet(slot);
+		}
+	}
+
+	/**
+	 * Called when message is dropped because inbox is full
+	 *
+	 * @param isQueued
+	 *            - true if message was queued before
+	 */
+	void onDrop(int what, boolean isQueued) {
+		mDroppedCount.incrementAndGet();
+		if (isQueued) {
+			onDequeue(what);
+		}
+	}
+
+	/**
+	 * Called when message is dropped because its deadline is missed
+	 *
+	 * @param isQueued
+	 *            - true if message was queued before
+	 */
+	void onDeadlineMiss(int what, boolean isQueued) {
+		mDeadlineMissCount.incrementAndGet();
+		if (isQueued) {
+			onDequeue(what);
+		}
+	}
+
+	/**
+	 * Called when message is merged into queued message
+	 */
+	void onCoalesce() {
+		mCoalescedCount.incrementAndGet();
+	}
+
+	/**
+	 * Called by layer thread before message is processed
+	 *
+	 * @return start time
+	 */
+	long onStart(int what) {
+		long now = DispatchEngine.uptimeMillis();
+		mCurrentStartTime = now;
+		mCurrentProtocol = what;
+		return now;
+	}
+
+	/**
+	 * Called by layer thread after message is processed
+	 */
+	void onFinish(int what, long startTime) {
+		long now = DispatchEngine.uptimeMillis();
+		long processingTime = now - startTime;
+		mCurrentStartTime = 0;
+		mLastProcessingTime = processingTime;
+		mLastFinishTime = now;
+		mHistogram.incrementAndGet(bucketOf(processingTime));
+		mProcessedCount.incrementAndGet();
+		onDequeue(what);
+	}
+
+	private void onDequeue(int what) {
+		mQueueDepth.decrementAndGet();
+		int slot = slotOf(what, false);
+		if (slot >= 0) {
+			mCounts.decrementAndGet(slot);
+		}
+	}
+
+	LayerStatus snapshot(int name) {
+		int[] protocols = new int[MAX_TRACKED_PROTOCOLS];
+		int size = 0;
+		for (int i = 0; i < MAX_TRACKED_PROTOCOLS; ++i) {
+			int key = mKeys.get(i);
+			if (key != EMPTY_KEY && mCounts.get(i) > 0) {
+				protocols[size++] = key;
+			}
+		}
+		int[] activeProtocols = new int[size];
+		System.arraycopy(protocols, 0, activeProtocols, 0, size);
+
+		long[] histogram = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+			histogram[i] = mHistogram.get(i);
+		}
+		long startTime = mCurrentStartTime;
+		long currentProcessingTime = startTime == 0 ? 0 : DispatchEngine.uptimeMillis() - startTime;
+		return new LayerStatus(name, activeProtocols, mQueueDepth.get(), mProcessedCount.get(), mDroppedCount.get(),
+				mCoalescedCount.get(), mDeadlineMissCount.get(), mLastProcessingTime, mLastFinishTime, startTime == 0 ? 0 : mCurrentProtocol,
+				currentProcessingTime, histogram);
+	}
+
+	private int slotOf(int what, boolean insert) {
+		int mask = MAX_TRACKED_PROTOCOLS - 1;
+		int start = (what * 0x9E3779B9) >>> 25 & mask;
+		for (int i = 0, slot = start; i < MAX_TRACKED_PROTOCOLS; ++i, slot = (slot + 1) & mask) {
+			int key = mKeys.get(slot);
+			if (key == what) {
+				return slot;
+			}
+			if (key == EMPTY_KEY) {
+				if (!insert) {
+					return -1;
+				}
+				if (mKeys.compareAndSet(slot, EMPTY_KEY, what)) {
+					return slot;
+				}
+				// slot is taken by another sender, it may be the same protocol
+				if (mKeys.get(slot) == what) {
+					return slot;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static int bucketOf(long processingTime) {
+		if (processingTime < 1) {
+			return 0;
+		}
+		int bucket = 64 - Long.numberOfLeadingZeros(processingTime);
+		return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+	}
+}
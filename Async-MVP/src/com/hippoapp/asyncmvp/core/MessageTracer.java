@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Optional tracing of model messages, see
+ * {@link Presenter#setTracer(MessageTracer)}. For every message handled by
+ * layer tracer records time in inbox and time in handler:
+ * <ul>
+ * <li>last events are kept in a fixed ring buffer and can be exported as
+ * trace file of Chrome trace viewer (chrome://tracing, Perfetto), see
+ * {@link #writeChromeTrace(Writer)}
+ * <li>all events are counted in log2 histograms per layer and protocol, see
+ * {@link #getLatencies()}
+ * </ul>
+ * Recording doesn't lock and doesn't allocate after first message of protocol.
+ * Event which is overwritten while being exported may be inconsistent.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public final class MessageTracer {
+
+	/**
+	 * Bucket 0 counts times under 1 microsecond, bucket i counts times from
+	 * 2^(i-1) to 2^i microseconds, the last bucket counts all longer times
+	 */
+	public static final int HISTOGRAM_BUCKETS = 24;
+
+	/**
+	 * Initial size of latency table, power of 2
+	 */
+	private static final int INITIAL_TABLE_SIZE = 64;
+
+	private final int mCapacity;
+	private final int[] mLayerIndexes;
+	private final int[] mLayers;
+	private final int[] mProtocols;
+	private final long[] mEnqueueTimes;
+	private final long[] mStartTimes;
+	private final long[] mFinishTimes;
+
+	/**
+	 * Count of recorded events, next event is written to slot
+	 * mCount % mCapacity
+	 */
+	private final AtomicLong mCount = new AtomicLong();
+
+	/**
+	 * Open addressing table of latencies by layer index and protocol. Lookup
+	 * doesn't lock, new latencies are added and table is replaced under lock
+	 * of tracer.
+	 */
+	private volatile AtomicReferenceArray<Latency> mLatencies = new AtomicReferenceArray<Latency>(
+			INITIAL_TABLE_SIZE);
+
+	/**
+	 * Guarded by this
+	 */
+	private int mLatencyCount;
+
+	/**
+	 * @param capacity
+	 *            - amount of last events kept for export, positive
+	 */
+	public MessageTracer(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		mCapacity = capacity;
+		mLayerIndexes = new int[capacity];
+		mLayers = new int[capacity];
+		mProtocols = new int[capacity];
+		mEnqueueTimes = new long[capacity];
+		mStartTimes = new long[capacity];
+		mFinishTimes = new long[capacity];
+	}
+
+	/**
+	 * Called by layer thread after message is handled, times are
+	 * {@link System#nanoTime()}
+	 *
+	 * @param layerIndex
+	 *            - index of layer in engine, unlike nameInt it is unique
+	 * @param layer
+	 *            - nameInt of layer
+	 */
+	void record(int layerIndex, int layer, int what, long enqueueTime, long startTime, long finishTime) {
+		int slot = (int) (mCount.getAndIncrement() % mCapacity);
+		mLayerIndexes[slot] = layerIndex;
+		mLayers[slot] = layer;
+		mProtocols[slot] = what;
+		mEnqueueTimes[slot] = enqueueTime;
+		mStartTimes[slot] = startTime;
+		mFinishTimes[slot] = finishTime;
+
+		Latency latency = find(mLatencies, layerIndex, what);
+		if (latency == null) {
+			latency = add(layerIndex, layer, what);
+		}
+		latency.mWaitHistogram.incrementAndGet(bucketOf(startTime - enqueueTime));
+		latency.mHandleHistogram.incrementAndGet(bucketOf(finishTime - startTime));
+	}
+
+	/**
+	 * @return latencies of every layer and protocol traced so far
+	 */
+	public List<Latency> getLatencies() {
+		AtomicReferenceArray<Latency> table = mLatencies;
+		List<Latency> latencies = new ArrayList<Latency>();
+		for (int i = 0; i < table.length(); ++i) {
+			Latency latency = table.get(i);
+			if (latency != null) {
+				latencies.add(latency);
+			}
+		}
+		return latencies;
+	}
+
+	/**
+	 * Forget all events and histograms
+	 */
+	public void clear() {
+		mCount.set(0);
+		synchronized (this) {
+			mLatencies = new AtomicReferenceArray<Latency>(INITIAL_TABLE_SIZE);
+			mLatencyCount = 0;
+		}
+	}
+
+	private static Latency find(AtomicReferenceArray<Latency> table, int layerIndex, int what) {
+		int mask = table.length() - 1;
+		for (int i = indexFor(layerIndex, what) & mask;; i = (i + 1) & mask) {
+			Latency latency = table.get(i);
+			if (latency == null || latency.mLayerIndex == layerIndex && latency.mProtocol == what) {
+				return latency;
+			}
+		}
+	}
+
+	private synchronized Latency add(int layerIndex, int layer, int what) {
+		Latency latency = find(mLatencies, layerIndex, what);
+		if (latency != null) {
+			// added by another layer thread
+			return latency;
+		}
+		latency = new Latency(layerIndex, layer, what);
+		AtomicReferenceArray<Latency> table = mLatencies;
+		if ((mLatencyCount + 1) * 2 > table.length()) {
+			// keep table half empty, so probe sequences are short
+			AtomicReferenceArray<Latency> newTable = new AtomicReferenceArray<Latency>(table.length() * 2);
+			for (int i = 0; i < table.length(); ++i) {
+				Latency old = table.get(i);
+				if (old != null) {
+					insert(newTable, old);
+				}
+			}
+			insert(newTable, latency);
+			mLatencies = newTable;
+		} else {
+			insert(table, latency);
+		}
+		++mLatencyCount;
+		return latency;
+	}
+
+	private static void insert(AtomicReferenceArray<Latency> table, Latency latency) {
+		int mask = table.length() - 1;
+		int i = indexFor(latency.mLayerIndex, latency.mProtocol) & mask;
+		while (table.get(i) != null) {
+			i = (i + 1) & mask;
+		}
+		table.set(i, latency);
+	}
+
+	private static int indexFor(int layerIndex, int what) {
+		int h = (what * 31 + layerIndex) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Write kept events in Chrome trace event format. Every layer is a thread
+	 * of trace, every message is a complete event named by protocol with time
+	 * in inbox in its args.
+	 */
+	public void writeChromeTrace(Writer writer) throws IOException {
+		long count = mCount.get();
+		int size = (int) Math.min(count, mCapacity);
+		// nameInt of layer by thread id of trace, layers without nameInt
+		// are different threads too
+		Map<Integer, Integer> layers = new TreeMap<Integer, Integer>();
+		writer.write("{\"traceEvents\":[");
+		boolean isFirst = true;
+		for (long i = count - size; i < count; ++i) {
+			int slot = (int) (i % mCapacity);
+			int tid = mLayerIndexes[slot] + 1;
+			layers.put(tid, mLayers[slot]);
+			if (!isFirst) {
+				writer.write(',');
+			}
+			isFirst = false;
+			long startTime = mStartTimes[slot];
+			writer.write("{\"name\":\"" + mProtocols[slot] + "\",\"cat\":\"model\",\"ph\":\"X\",\"pid\":1,\"tid\":"
+					+ tid + ",\"ts\":" + startTime / 1000 + ",\"dur\":" + (mFinishTimes[slot] - startTime) / 1000
+					+ ",\"args\":{\"inbox_us\":" + (startTime - mEnqueueTimes[slot]) / 1000 + "}}");
+		}
+		for (Map.Entry<Integer, Integer> layer : layers.entrySet()) {
+			if (!isFirst) {
+				writer.write(',');
+			}
+			isFirst = false;
+			writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + layer.getKey()
+					+ ",\"args\":{\"name\":\"layer " + layer.getValue() + " #" + layer.getKey() + "\"}}");
+		}
+		writer.write("]}");
+		writer.flush();
+	}
+
+	private static int bucketOf(long timeInNanos) {
+		long micros = timeInNanos / 1000;
+		if (micros < 1) {
+			return 0;
+		}
+		int bucket = 64 - Long.numberOfLeadingZeros(micros);
+		return Math.min(bucket, HISTOGRAM_BUCKETS - 1);
+	}
+
+	/**
+	 * Histograms of one protocol of one layer. Histograms are live, take
+	 * copies with getters.
+	 */
+	public static final class Latency {
+		private final int mLayerIndex;
+		private final int mLayer;
+		private final int mProtocol;
+		private final AtomicLongArray mWaitHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+		private final AtomicLongArray mHandleHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+		Latency(int layerIndex, int layer, int protocol) {
+			mLayerIndex = layerIndex;
+			mLayer = layer;
+			mProtocol = protocol;
+		}
+
+		/**
+		 * @return nameInt of layer
+		 */
+		public int getLayer() {
+			return mLayer;
+		}
+
+		public int getProtocol() {
+			return mProtocol;
+		}
+
+		/**
+		 * @return histogram of time between sending and start of handling,
+		 *         see {@link MessageTracer#HISTOGRAM_BUCKETS}
+		 */
+		public long[] getWaitHistogram() {
+			return copyOf(mWaitHistogram);
+		}
+
+		/**
+		 * @return histogram of time in handler, see
+		 *         {@link MessageTracer#HISTOGRAM_BUCKETS}
+		 */
+		public long[] getHandleHistogram() {
+			return copyOf(mHandleHistogram);
+		}
+
+		private static long[] copyOf(AtomicLongArray histogram) {
+			long[] result = new long[HISTOGRAM_BUCKETS];
+			for (int i = 0; i < HISTOGRAM_BUCKETS; ++i) {
+				result[i] = histogram.get(i);
+			}
+			return result;
+		}
+
+		@Override
+		public String toString() {
+			return "Latency [layer=" + mLayer + ", protocol=" + mProtocol + "]";
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+/**
+ * Defines what happens with message which doesn't fit into bounded inbox
+ * of layer, see {@link Presenter#setInboxBound(int, int, OverflowPolicy)}
+ *
+ * @author Bnet.Android.Developer.Team
+ */
+public enum OverflowPolicy {
+	/**
+	 * Oldest queued message is dropped
+	 */
+	DROP_OLDEST,
+	/**
+	 * New message is dropped
+	 */
+	DROP_NEWEST,
+	/**
+	 * New message replaces payload of queued message with the same
+	 * <code>what</code> and <code>arg1</code>. Coalescing works in
+	 * bounded inbox even before it is full. If there is no such message
+	 * oldest message is dropped.
+	 */
+	COALESCE,
+	/**
+	 * Sender waits for free space. Layer which sends message to itself
+	 * never waits, its inbox exceeds capacity instead. Status notices like
+	 * {@link com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol#LAYER_SATURATED}
+	 * never wait either, they are dropped.
+	 */
+	BLOCK
+}
@@ -22,7 +22,16 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.app.backup.BackupManager;
 import android.content.Context;
@@ -36,6 +45,19 @@ import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
  * запуска приложения. You do not instantiate this class directly; instead,
  * retrieve it through {@link PreferencesManager#getInst()}.
  *
+ * <p>
+ * By default every put commits preferences file on caller thread. In batched
+ * mode, see {@link #setBatchedWrites(boolean)}, put stores value in in-memory
+ * snapshot which is readable immediately, and values are committed on single
+ * writer thread. Writes made in a short period are coalesced into one commit
+ * and backup notifications are debounced.
+ *
+ * <p>
+ * Frequently read preferences should be accessed through typed accessors, see
+ * {@link #booleanPreference(String, boolean)}. Accessor resolves backup routing
+ * once and caches value in primitive field until any preference is changed or
+ * preferences are reloaded by {@link #reboot()}.
+ *
  * @author Bnet.Android.Developer.Team
  *
  */
@@ -59,6 +81,56 @@ public class PreferencesManager implements AsyncMvpConstants {
 
 	private String mPrefName;
 
+	/**
+	 * Delay which coalesces writes of batched mode into one commit
+	 */
+	private static final long BATCH_COMMIT_DELAY_IN_MILLIS = 100;
+
+	/**
+	 * Delay which coalesces backup notifications of batched mode
+	 */
+	private static final long BACKUP_DEBOUNCE_IN_MILLIS = 2000;
+
+	/**
+	 * Stored in snapshot instead of {@code null} string
+	 */
+	private static final Object NULL_VALUE = new Object();
+
+	private volatile boolean isBatchedWrites;
+
+	/**
+	 * Values which are put in batched mode and are not committed yet
+	 */
+	private final ConcurrentHashMap<String, Object> mPendingWrites = new ConcurrentHashMap<String, Object>();
+
+	private final AtomicBoolean mIsCommitScheduled = new AtomicBoolean();
+
+	private final AtomicBoolean mIsBackupScheduled = new AtomicBoolean();
+
+	private ScheduledExecutorService mWriter;
+
+	private final Runnable mCommitTask = new Runnable() {
+		@Override
+		public void run() {
+			mIsCommitScheduled.set(false);
+			flush();
+		}
+	};
+
+	/**
+	 * Changed after every put and reload, cached values of typed accessors
+	 * with another generation are stale
+	 */
+	private final AtomicInteger mGeneration = new AtomicInteger();
+
+	private final Runnable mBackupTask = new Runnable() {
+		@Override
+		public void run() {
+			mIsBackupScheduled.set(false);
+			dataChanged();
+		}
+	};
+
 	public static final void initInstance(Context context, Set<String> backupSet) {
 		sInstance = new PreferencesManager(context, backupSet);
 	}
@@ -69,6 +141,7 @@ public class PreferencesManager implements AsyncMvpConstants {
 		mEditor = mSettings.edit();
 		mSettingsBackup = mContext.getSharedPreferences(mPrefName + SUFFIX_BACK, 0);
 		mEditorBackup = mSettingsBackup.edit();
+		mGeneration.incrementAndGet();
 	}
 
 	public static final PreferencesManager getInst() {
@@ -98,28 +171,120 @@ public class PreferencesManager implements AsyncMvpConstants {
 		return mPrefName;
 	}
 
+	/**
+	 * Enable or disable batched mode. When batched mode is disabled pending
+	 * values are committed on caller thread.
+	 *
+	 * @param batched
+	 *            - true to commit values asynchronously
+	 */
+	public synchronized void setBatchedWrites(boolean batched) {
+		if (batched && mWriter == null) {
+			mWriter = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, PreferencesManager.class.getSimpleName() + "-writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		isBatchedWrites = batched;
+		if (!batched) {
+			flush();
+		}
+	}
+
+	/**
+	 * Commit values which are put in batched mode on caller thread. Call it
+	 * when values must be persisted right now, for example before process
+	 * may be killed.
+	 */
+	public void flush() {
+		if (mPendingWrites.isEmpty()) {
+			return;
+		}
+		boolean isBackupChanged = false;
+		boolean isChanged = false;
+		synchronized (mPendingWrites) {
+			Map<String, Object> written = new HashMap<String, Object>(mPendingWrites);
+			for (Map.Entry<String, Object> entry : written.entrySet()) {
+				String key = entry.getKey();
+				if (mBackupSet.contains(key)) {
+					write(mEditorBackup, key, entry.getValue());
+					isBackupChanged = true;
+				} else {
+					write(mEditor, key, entry.getValue());
+					isChanged = true;
+				}
+			}
+			if (isBackupChanged) {
+				mEditorBackup.commit();
+			}
+			if (isChanged) {
+				mEditor.commit();
+			}
+			// values put during commit stay in snapshot till next flush
+			for (Map.Entry<String, Object> entry : written.entrySet()) {
+				mPendingWrites.remove(entry.getKey(), entry.getValue());
+			}
+		}
+		if (isBackupChanged) {
+			if (isBatchedWrites && mIsBackupScheduled.compareAndSet(false, true)) {
+				mWriter.schedule(mBackupTask, BACKUP_DEBOUNCE_IN_MILLIS, TimeUnit.MILLISECONDS);
+			} else if (!isBatchedWrites) {
+				dataChanged();
+			}
+		}
+	}
+
 	public boolean get(String key, boolean defValue) {
+		Object value = mPendingWrites.get(key);
+		if (value instanceof Boolean) {
+			return (Boolean) value;
+		}
 		return preference(key).getBoolean(key, defValue);
 	}
 
 	public float get(String key, float defValue) {
+		Object value = mPendingWrites.get(key);
+		if (value instanceof Float) {
+			return (Float) value;
+		}
 		return preference(key).getFloat(key, defValue);
 	}
 
 	public int get(String key, int defValue) {
+		Object value = mPendingWrites.get(key);
+		if (value instanceof Integer) {
+			return (Integer) value;
+		}
 		return preference(key).getInt(key, defValue);
 	}
 
 	public long get(String key, long defValue) {
+		Object value = mPendingWrites.get(key);
+		if (value instanceof Long) {
+			return (Long) value;
+		}
 		return preference(key).getLong(key, defValue);
 	}
 
 	public String get(String key, String defValue) {
+		Object value = mPendingWrites.get(key);
+		if (value == NULL_VALUE) {
+			return defValue;
+		}
+		if (value instanceof String) {
+			return (String) value;
+		}
 		return preference(key).getString(key, defValue);
 	}
 
 	public void put(String key, boolean value) {
-		if (mBackupSet.contains(key)) {
+		if (isBatchedWrites) {
+			putPending(key, value);
+		} else if (mBackupSet.contains(key)) {
 			mEditorBackup.putBoolean(key, value);
 			mEditorBackup.commit();
 			dataChanged();
@@ -127,10 +292,13 @@ public class PreferencesManager implements AsyncMvpConstants {
 			mEditor.putBoolean(key, value);
 			mEditor.commit();
 		}
+		mGeneration.incrementAndGet();
 	}
 
 	public void put(String key, float value) {
-		if (mBackupSet.contains(key)) {
+		if (isBatchedWrites) {
+			putPending(key, value);
+		} else if (mBackupSet.contains(key)) {
 			mEditorBackup.putFloat(key, value);
 			mEditorBackup.commit();
 			dataChanged();
@@ -138,10 +306,13 @@ public class PreferencesManager implements AsyncMvpConstants {
 			mEditor.putFloat(key, value);
 			mEditor.commit();
 		}
+		mGeneration.incrementAndGet();
 	}
 
 	public void put(String key, int value) {
-		if (mBackupSet.contains(key)) {
+		if (isBatchedWrites) {
+			putPending(key, value);
+		} else if (mBackupSet.contains(key)) {
 			mEditorBackup.putInt(key, value);
 			mEditorBackup.commit();
 			dataChanged();
@@ -149,10 +320,13 @@ public class PreferencesManager implements AsyncMvpConstants {
 			mEditor.putInt(key, value);
 			mEditor.commit();
 		}
+		mGeneration.incrementAndGet();
 	}
 
 	public void put(String key, long value) {
-		if (mBackupSet.contains(key)) {
+		if (isBatchedWrites) {
+			putPending(key, value);
+		} else if (mBackupSet.contains(key)) {
 			mEditorBackup.putLong(key, value);
 			mEditorBackup.commit();
 			dataChanged();
@@ -160,10 +334,13 @@ public class PreferencesManager implements AsyncMvpConstants {
 			mEditor.putLong(key, value);
 			mEditor.commit();
 		}
+		mGeneration.incrementAndGet();
 	}
 
 	public void put(String key, String value) {
-		if (mBackupSet.contains(key)) {
+		if (isBatchedWrites) {
+			putPending(key, value == null ? NULL_VALUE : value);
+		} else if (mBackupSet.contains(key)) {
 			mEditorBackup.putString(key, value);
 			mEditorBackup.commit();
 			dataChanged();
@@ -171,6 +348,245 @@ public class PreferencesManager implements AsyncMvpConstants {
 			mEditor.putString(key, value);
 			mEditor.commit();
 		}
+		mGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Returns typed accessor of boolean preference
+	 *
+	 * @param key
+	 *            - key of preference
+	 * @param defValue
+	 *            - value returned if preference doesn't exist
+	 * @return accessor, it is preferable to keep it in field
+	 */
+	public BooleanPreference booleanPreference(String key, boolean defValue) {
+		return new BooleanPreference(this, key, defValue);
+	}
+
+	/**
+	 * Returns typed accessor of float preference
+	 *
+	 * @see #booleanPreference(String, boolean)
+	 */
+	public FloatPreference floatPreference(String key, float defValue) {
+		return new FloatPreference(this, key, defValue);
+	}
+
+	/**
+	 * Returns typed accessor of int preference
+	 *
+	 * @see #booleanPreference(String, boolean)
+	 */
+	public IntPreference intPreference(String key, int defValue) {
+		return new IntPreference(this, key, defValue);
+	}
+
+	/**
+	 * Returns typed accessor of long preference
+	 *
+	 * @see #booleanPreference(String, boolean)
+	 */
+	public LongPreference longPreference(String key, long defValue) {
+		return new LongPreference(this, key, defValue);
+	}
+
+	/**
+	 * Returns typed accessor of string preference
+	 *
+	 * @see #booleanPreference(String, boolean)
+	 */
+	public StringPreference stringPreference(String key, String defValue) {
+		return new StringPreference(this, key, defValue);
+	}
+
+	private void putPending(String key, Object value) {
+		mPendingWrites.put(key, value);
+		if (mIsCommitScheduled.compareAndSet(false, true)) {
+			mWriter.schedule(mCommitTask, BATCH_COMMIT_DELAY_IN_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static void write(Editor editor, String key, Object value) {
+		if (value == NULL_VALUE) {
+			editor.remove(key);
+		} else if (value instanceof Boolean) {
+			editor.putBoolean(key, (Boolean) value);
+		} else if (value instanceof Float) {
+			editor.putFloat(key, (Float) value);
+		} else if (value instanceof Integer) {
+			editor.putInt(key, (Integer) value);
+		} else if (value instanceof Long) {
+			editor.putLong(key, (Long) value);
+		} else {
+			editor.putString(key, (String) value);
+		}
+	}
+
+	/**
+	 * Base of typed accessors. Backup routing of key is resolved on creation,
+	 * value is reloaded only when generation of {@link PreferencesManager} is
+	 * changed.
+	 */
+	public static abstract class TypedPreference {
+		final PreferencesManager mManager;
+		final String mKey;
+		private final boolean isBackup;
+
+		/**
+		 * Written after value, so reader which sees generation sees value too
+		 */
+		private volatile int mLoadedGeneration;
+
+		TypedPreference(PreferencesManager manager, String key) {
+			mManager = manager;
+			mKey = key;
+			isBackup = manager.mBackupSet.contains(key);
+			mLoadedGeneration = manager.mGeneration.get() - 1;
+		}
+
+		final void ensureLoaded() {
+			int generation = mManager.mGeneration.get();
+			if (mLoadedGeneration != generation) {
+				Object pending = mManager.mPendingWrites.get(mKey);
+				load(isBackup ? mManager.mSettingsBackup : mManager.mSettings, pending);
+				mLoadedGeneration = generation;
+			}
+		}
+
+		public String getKey() {
+			return mKey;
+		}
+
+		/**
+		 * Load value from pending write of batched mode if it has suitable
+		 * type, otherwise from preferences
+		 */
+		abstract void load(SharedPreferences preferences, Object pending);
+	}
+
+	public static final class BooleanPreference extends TypedPreference {
+		private final boolean mDefValue;
+		private boolean mValue;
+
+		BooleanPreference(PreferencesManager manager, String key, boolean defValue) {
+			super(manager, key);
+			mDefValue = defValue;
+		}
+
+		public boolean get() {
+			ensureLoaded();
+			return mValue;
+		}
+
+		public void set(boolean value) {
+			mManager.put(mKey, value);
+		}
+
+		@Override
+		void load(SharedPreferences preferences, Object pending) {
+			mValue = pending instanceof Boolean ? (Boolean) pending : preferences.getBoolean(mKey, mDefValue);
+		}
+	}
+
+	public static final class FloatPreference extends TypedPreference {
+		private final float mDefValue;
+		private float mValue;
+
+		FloatPreference(PreferencesManager manager, String key, float defValue) {
+			super(manager, key);
+			mDefValue = defValue;
+		}
+
+		public float get() {
+			ensureLoaded();
+			return mValue;
+		}
+
+		public void set(float value) {
+			mManager.put(mKey, value);
+		}
+
+		@Override
+		void load(SharedPreferences preferences, Object pending) {
+			mValue = pending instanceof Float ? (Float) pending : preferences.getFloat(mKey, mDefValue);
+		}
+	}
+
+	public static final class IntPreference extends TypedPreference {
+		private final int mDefValue;
+		private int mValue;
+
+		IntPreference(PreferencesManager manager, String key, int defValue) {
+			super(manager, key);
+			mDefValue = defValue;
+		}
+
+		public int get() {
+			ensureLoaded();
+			return mValue;
+		}
+
+		public void set(int value) {
+			mManager.put(mKey, value);
+		}
+
+		@Override
+		void load(SharedPreferences preferences, Object pending) {
+			mValue = pending instanceof Integer ? (Integer) pending : preferences.getInt(mKey, mDefValue);
+		}
+	}
+
+	public static final class LongPreference extends TypedPreference {
+		private final long mDefValue;
+		private long mValue;
+
+		LongPreference(PreferencesManager manager, String key, long defValue) {
+			super(manager, key);
+			mDefValue = defValue;
+		}
+
+		public long get() {
+			ensureLoaded();
+			return mValue;
+		}
+
+		public void set(long value) {
+			mManager.put(mKey, value);
+		}
+
+		@Override
+		void load(SharedPreferences preferences, Object pending) {
+			mValue = pending instanceof Long ? (Long) pending : preferences.getLong(mKey, mDefValue);
+		}
+	}
+
+	public static final class StringPreference extends TypedPreference {
+		private final String mDefValue;
+		private String mValue;
+
+		StringPreference(PreferencesManager manager, String key, String defValue) {
+			super(manager, key);
+			mDefValue = defValue;
+		}
+
+		public String get() {
+			ensureLoaded();
+			return mValue;
+		}
+
+		public void set(String value) {
+			mManager.put(mKey, value);
+		}
+
+		@Override
+		void load(SharedPreferences preferences, Object pending) {
+			if (pending == NULL_VALUE) {
+				mValue = mDefValue;
+			} else {
+				mValue = pending instanceof String ? (String) pending : preferences.getString(mKey, mDefValue);
+			}
+		}
 	}
 
 	@Target({ ElementType.TYPE })
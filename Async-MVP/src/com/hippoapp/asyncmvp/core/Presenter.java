@@ -23,9 +23,11 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import android.content.Context;
 import android.os.Bundle;
@@ -34,6 +36,7 @@ import android.os.Handler.Callback;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.util.Log;
 
 import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
 
@@ -74,8 +77,24 @@ import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
  * identifier as {@link Message#arg1}. Identifier is a number annotated as
  * {@link ModelLayer} A message with this protocol should be sent to a needed
  * layer. Answer is received via {@link AsyncMvpPresenterProtocol#PUT_STATUS}
- * protocol with {@link LayerStatus} object, which contains a list of currently
- * executing layer protocols.
+ * protocol with {@link com.hippoapp.asyncmvp.core.LayerStatus} object, which
+ * contains protocols queued or executed by layer, queue depth and processing
+ * times. Status is tracked by Presenter, see {@link #getLayerStatus(int)}.
+ *
+ * <p>
+ * Progress-like view protocols may be coalesced, see
+ * {@link #setCoalesced(int, boolean)}. Only the latest value of coalesced
+ * protocol is delivered when view hasn't handled previous one yet.
+ *
+ * <p>
+ * Layer can be asked for an answer with
+ * {@link #request(int, Object, long, Callback)}. Request is delivered to layers
+ * as usual model message, but answer, sent by handling layer with
+ * {@link #reply(int, int, Object)}, goes to requester only.
+ *
+ * <p>
+ * Model messages may have priority and deadline, see
+ * {@link #sendModelMessage(int, int, int, Object, Bundle, Priority, long)}.
  *
  * @author Bnet.Android.Developer.Team
  *
@@ -86,11 +105,33 @@ public final class Presenter implements Callback {
 
 	private ModelHandler[] mModelHandlers;
 
-	private int mSizeInboxHandlers;
+	/**
+	 * Routes model messages to layers, each layer is drained on its
+	 * HandlerThread
+	 */
+	private final DispatchEngine mEngine = new DispatchEngine(new DispatchEngine.Listener() {
+		@Override
+		public void onSaturationChanged(int name, boolean isSaturated) {
+			int what = isSaturated ? AsyncMvpPresenterProtocol.LAYER_SATURATED
+					: AsyncMvpPresenterProtocol.LAYER_RELEASED;
+			sendViewMessage(what, name, 0, null);
+			mEngine.sendExcept(name, what, name, 0, null, null, Priority.URGENT);
+		}
+
+		@Override
+		public void onDeadlineMiss(int name, int what, long lateness) {
+			Log.w(TAG, "layer " + name + ": protocol " + what + " missed deadline by " + lateness + " ms");
+		}
+	});
 
-	private List<Handler> mViewHandlers;
+	private int mSizeInboxHandlers;
 
-	private HashMap<Callback, Handler> mHandlerMap;
+	/**
+	 * Handlers of View-components. Registry is never changed after
+	 * publication, subscribe and unsubscribe replace it, so senders on model
+	 * threads read it without locks.
+	 */
+	private volatile ViewRegistry mViewRegistry = new ViewRegistry(new ViewHandler[0]);
 
 	private static volatile Presenter sInstance;
 
@@ -99,6 +140,16 @@ public final class Presenter implements Callback {
 	private Handler mThisHandler;
 	private HandlerThread mThisHandlerThread;
 
+	/**
+	 * Slots of coalesced view protocols, replaced on change
+	 */
+	private volatile CoalescedSlot[] mCoalescedSlots = new CoalescedSlot[0];
+
+	/**
+	 * Request which is handled on current thread right now
+	 */
+	private static final ThreadLocal<Request> sCurrentRequest = new ThreadLocal<Request>();
+
 	public static final void initInstance(Context context, List<ModelLayerInterface> listInbox) {
 		sInstance = new Presenter(context, listInbox);
 	}
@@ -114,15 +165,13 @@ public final class Presenter implements Callback {
 	private Presenter(Context context, List<ModelLayerInterface> listInbox) {
 		mContext = context;
 
-		mHandlerMap = new HashMap<Callback, Handler>();
-		mViewHandlers = new ArrayList<Handler>();
-
 		mSizeInboxHandlers = listInbox.size();
 		mModelHandlers = new ModelHandler[mSizeInboxHandlers];
 		for (int i = 0; i < mSizeInboxHandlers; ++i) {
 			HandlerThread handlerThread = new HandlerThread(listInbox.get(i).getClass().getName());
 			handlerThread.start();
 			mModelHandlers[i] = new ModelHandler(handlerThread.getLooper(), listInbox.get(i));
+			mEngine.addLayer(mModelHandlers[i].name, mModelHandlers[i], mModelHandlers[i]);
 		}
 
 		mThisHandlerThread = new HandlerThread(getClass().getCanonicalName());
@@ -131,15 +180,41 @@ public final class Presenter implements Callback {
 	}
 
 	/**
-	 * Add View-component in <code>mViewHandler</code> for receiving messages
+	 * Add View-component in <code>mViewHandler</code> for receiving messages.
+	 * If class of View-component is annotated as {@link ViewProtocols} it
+	 * receives only declared protocols, otherwise it receives all messages.
 	 *
 	 * @param viewComponentCallback
 	 *            - View-component, which realized {@link Callback}.
 	 */
 	public final void subscribe(Callback viewComponentCallback) {
-		Handler handler = new Handler(viewComponentCallback);
-		mHandlerMap.put(viewComponentCallback, handler);
-		mViewHandlers.add(handler);
+		ViewProtocols viewProtocols = viewComponentCallback.getClass().getAnnotation(ViewProtocols.class);
+		subscribe(viewComponentCallback, viewProtocols == null ? null : viewProtocols.value());
+	}
+
+	/**
+	 * Add View-component in <code>mViewHandler</code> for receiving messages
+	 * of specified protocols only. Messages of other protocols are not posted
+	 * to View-component.
+	 *
+	 * @param viewComponentCallback
+	 *            - View-component, which realized {@link Callback}.
+	 * @param protocols
+	 *            - protocols, from {@link AsyncMvpPresenterProtocol} or class
+	 *            extended it; {@code null} to receive all messages
+	 */
+	public final synchronized void subscribe(Callback viewComponentCallback, int... protocols) {
+		ViewHandler[] handlers = mViewRegistry.mAll;
+		for (ViewHandler handler : handlers) {
+			if (handler.mCallback == viewComponentCallback) {
+				return;
+			}
+		}
+		ViewHandler[] newHandlers = new ViewHandler[handlers.length + 1];
+		System.arraycopy(handlers, 0, newHandlers, 0, handlers.length);
+		newHandlers[handlers.length] = new ViewHandler(viewComponentCallback, protocols == null ? null
+				: protocols.clone());
+		mViewRegistry = new ViewRegistry(newHandlers);
 	}
 
 	/**
@@ -148,11 +223,17 @@ public final class Presenter implements Callback {
 	 * @param viewComponentallback
 	 *            - View-component, which realized {@link Callback}.
 	 */
-	public final void unsubscribe(Callback viewComponentallback) {
-		List<Handler> newList = new ArrayList<Handler>(mViewHandlers);
-		newList.remove(mHandlerMap.get(viewComponentallback));
-		mHandlerMap.remove(viewComponentallback);
-		mViewHandlers = newList;
+	public final synchronized void unsubscribe(Callback viewComponentallback) {
+		ViewHandler[] handlers = mViewRegistry.mAll;
+		for (int i = 0; i < handlers.length; ++i) {
+			if (handlers[i].mCallback == viewComponentallback) {
+				ViewHandler[] newHandlers = new ViewHandler[handlers.length - 1];
+				System.arraycopy(handlers, 0, newHandlers, 0, i);
+				System.arraycopy(handlers, i + 1, newHandlers, i, handlers.length - i - 1);
+				mViewRegistry = new ViewRegistry(newHandlers);
+				return;
+			}
+		}
 	}
 
 	/**
@@ -216,12 +297,67 @@ public final class Presenter implements Callback {
 	 *            - container with primitive types for additional info
 	 */
 	public final void sendViewMessage(int what, int arg1, int arg2, Object obj, Bundle bundle) {
-		List<Handler> outBoxList = mViewHandlers;
+		ViewHandler[] outBoxList = mViewRegistry.handlersFor(what);
+		if (bundle == null) {
+			CoalescedSlot slot = findCoalescedSlot(what);
+			if (slot != null) {
+				// one payload is shared by all views, pending message of view
+				// picks the latest payload when it is handled
+				slot.mLatest = new Payload(arg1, arg2, obj);
+				for (Handler handler : outBoxList) {
+					if (!handler.hasMessages(what, slot)) {
+						Message.obtain(handler, what, slot).sendToTarget();
+					}
+				}
+				return;
+			}
+		}
 		for (Handler handler : outBoxList) {
 			sendMessageToTarget(handler, what, arg1, arg2, obj, bundle);
 		}
 	}
 
+	/**
+	 * Enable or disable coalescing of view protocol. If view hasn't handled
+	 * previous message of coalesced protocol, new message replaces it, so view
+	 * gets only the latest value. Messages with {@link Bundle} are never
+	 * coalesced.
+	 *
+	 * @param what
+	 *            - view protocol, for example progress or location update
+	 * @param coalesced
+	 *            - true to coalesce messages
+	 */
+	public final synchronized void setCoalesced(int what, boolean coalesced) {
+		CoalescedSlot[] slots = mCoalescedSlots;
+		CoalescedSlot slot = findCoalescedSlot(what);
+		if (coalesced && slot == null) {
+			CoalescedSlot[] newSlots = new CoalescedSlot[slots.length + 1];
+			System.arraycopy(slots, 0, newSlots, 0, slots.length);
+			newSlots[slots.length] = new CoalescedSlot(what);
+			mCoalescedSlots = newSlots;
+		} else if (!coalesced && slot != null) {
+			CoalescedSlot[] newSlots = new CoalescedSlot[slots.length - 1];
+			int j = 0;
+			for (CoalescedSlot s : slots) {
+				if (s != slot) {
+					newSlots[j++] = s;
+				}
+			}
+			mCoalescedSlots = newSlots;
+		}
+	}
+
+	private CoalescedSlot findCoalescedSlot(int what) {
+		CoalescedSlot[] slots = mCoalescedSlots;
+		for (int i = 0; i < slots.length; ++i) {
+			if (slots[i].mWhat == what) {
+				return slots[i];
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Send empty message with {@link Message#arg1}=0, {@link Message#arg2}=0 to
 	 * Model-components. Model-components receive message consequentially or
@@ -287,34 +423,197 @@ public final class Presenter implements Callback {
 	 *            - container with primitive types for additional info
 	 */
 	public final void sendModelMessage(int what, int arg1, int arg2, Object obj, Bundle bundle) {
-		for (Handler handler : mModelHandlers) {
-			sendMessageToTarget(handler, what, arg1, arg2, obj, bundle);
-		}
+		sendModelMessage(what, arg1, arg2, obj, bundle, Priority.NORMAL, 0);
+	}
+
+	/**
+	 * Send message to Model-components with priority and deadline. Layer takes
+	 * messages of more urgent {@link Priority} first, messages of the same
+	 * priority are taken in order of sending. Message which is not taken by
+	 * layer in <code>deadline</code> is dropped, logged and counted in
+	 * {@link com.hippoapp.asyncmvp.core.LayerStatus#getDeadlineMissCount()}.
+	 *
+	 * @param what
+	 *            - protocol, from {@link AsyncMvpPresenterProtocol} or class
+	 *            extended it.
+	 * @param arg1
+	 *            - {@link Message#arg1}
+	 * @param arg2
+	 *            - {@link Message#arg2}
+	 * @param obj
+	 *            - {@link Message#obj}
+	 * @param bundle
+	 *            - container with primitive types for additional info
+	 * @param priority
+	 *            - priority of message
+	 * @param deadline
+	 *            - time in milliseconds from now, while message is useful, 0
+	 *            means no deadline
+	 */
+	public final void sendModelMessage(int what, int arg1, int arg2, Object obj, Bundle bundle, Priority priority,
+			long deadline) {
+		mEngine.send(what, arg1, arg2, obj, bundle, priority, deadline);
 		Message.obtain(mThisHandler, what, arg1, arg2, obj).sendToTarget();
 	}
 
+	/**
+	 * Send request to Model-components and wait for answer asynchronously.
+	 * Model-components receive message with payload in {@link Message#obj} as
+	 * usual; the one which handles it answers with
+	 * {@link #reply(int, int, Object)}. Only first answer is delivered and only
+	 * to <code>callback</code>, no other View or Model receives it.
+	 *
+	 * <p>
+	 * Answer is delivered on Looper of calling thread or on Presenter thread if
+	 * calling thread hasn't Looper. Answer message has request protocol in
+	 * {@link Message#what}. If there is no answer in <code>timeout</code>,
+	 * callback receives {@link AsyncMvpPresenterProtocol#REQUEST_TIMEOUT} with
+	 * request protocol in {@link Message#arg1}. Request dropped by bounded
+	 * inbox ends with timeout too.
+	 *
+	 * @param what
+	 *            - protocol, from {@link AsyncMvpPresenterProtocol} or class
+	 *            extended it.
+	 * @param payload
+	 *            - {@link Message#obj} for Model-components
+	 * @param timeout
+	 *            - time to wait for answer in milliseconds
+	 * @param callback
+	 *            - receiver of answer
+	 * @return request, can be cancelled
+	 */
+	public final Request request(int what, Object payload, long timeout, Callback callback) {
+		Looper looper = Looper.myLooper();
+		if (looper == null) {
+			looper = mThisHandlerThread.getLooper();
+		}
+		Request request = new Request(what, payload, new Handler(looper, callback));
+		request.mHandler.postDelayed(request.mTimeoutTask, timeout);
+		mEngine.send(what, 0, 0, request, null, Priority.NORMAL, 0);
+		Message.obtain(mThisHandler, what, 0, 0, request).sendToTarget();
+		return request;
+	}
+
+	/**
+	 * Answer request which is handled on current thread, see
+	 * {@link #request(int, Object, long, Callback)}. Keep
+	 * {@link #getCurrentRequest()} to answer later from another thread.
+	 *
+	 * @param arg1
+	 *            - {@link Message#arg1}
+	 * @param arg2
+	 *            - {@link Message#arg2}
+	 * @param obj
+	 *            - {@link Message#obj}
+	 * @return {@code true} if answer is delivered, {@code false} if current
+	 *         message isn't request or request is already answered
+	 */
+	public final boolean reply(int arg1, int arg2, Object obj) {
+		Request request = sCurrentRequest.get();
+		return request != null && request.reply(arg1, arg2, obj);
+	}
+
+	/**
+	 * @return request which is handled on current thread or {@code null} if
+	 *         current message is usual model message
+	 */
+	public static final Request getCurrentRequest() {
+		return sCurrentRequest.get();
+	}
+
+	/**
+	 * Unwrap payload of request and make request current while handler
+	 * handles message
+	 */
+	private static void dispatch(Handler handler, Message msg) {
+		if (!(msg.obj instanceof Request)) {
+			handler.dispatchMessage(msg);
+			return;
+		}
+		Request request = (Request) msg.obj;
+		msg.obj = request.mPayload;
+		sCurrentRequest.set(request);
+		try {
+			handler.dispatchMessage(msg);
+		} finally {
+			sCurrentRequest.remove();
+		}
+	}
+
+	/**
+	 * Limit inbox of model layer. When inbox is full, message is handled by
+	 * overflow policy and {@link AsyncMvpPresenterProtocol#LAYER_SATURATED} is
+	 * sent to views and other layers. When layer drains inbox to half of
+	 * capacity {@link AsyncMvpPresenterProtocol#LAYER_RELEASED} is sent.
+	 *
+	 * @param name
+	 *            - nameInt of layer, see {@link ModelLayer}
+	 * @param capacity
+	 *            - maximum amount of queued messages, 0 means unbounded
+	 * @param policy
+	 *            - what to do with message which doesn't fit
+	 */
+	public final void setInboxBound(int name, int capacity, OverflowPolicy policy) {
+		mEngine.setBound(name, capacity, policy);
+	}
+
 	private void sendMessageToTarget(Handler handler, int what, int arg1, int arg2, Object obj, Bundle bundle) {
 		Message message = Message.obtain(handler, what, arg1, arg2, obj);
-		message.setData(bundle);
+		if (bundle != null) {
+			message.setData(bundle);
+		}
 		message.sendToTarget();
 	}
 
+	/**
+	 * Returns snapshot of layer state. It is safe to call it from any thread,
+	 * layer is not involved.
+	 *
+	 * @param name
+	 *            - nameInt of layer, see {@link ModelLayer}
+	 * @return status or {@code null} if there is no such layer
+	 */
+	public final com.hippoapp.asyncmvp.core.LayerStatus getLayerStatus(int name) {
+		return mEngine.getStatus(name);
+	}
+
+	/**
+	 * Turn tracing of model messages on: time in inbox and time in handler of
+	 * every layer and protocol. Tracing costs a few clock reads per message,
+	 * keep it off in release builds.
+	 *
+	 * @param tracer
+	 *            - receiver of events, {@code null} turns tracing off
+	 */
+	public final void setTracer(MessageTracer tracer) {
+		mEngine.setTracer(tracer);
+	}
+
 	public final void dispose() {
-		for (Handler handler : mModelHandlers) {
+		mEngine.close();
+		for (ModelHandler handler : mModelHandlers) {
 			handler.getLooper().quit();
 		}
 	}
 
 	@Override
 	public boolean handleMessage(Message msg) {
+		Request request = null;
+		if (msg.obj instanceof Request) {
+			request = (Request) msg.obj;
+		}
 		switch (msg.what) {
 		case AsyncMvpPresenterProtocol.GET_STATUS: {
 			int name = msg.arg1;
-			for (ModelHandler modelHandler : mModelHandlers) {
-				if (modelHandler.name != 0 && modelHandler.name == name) {
-					sendViewMessage(AsyncMvpPresenterProtocol.PUT_STATUS, name, 0, modelHandler.inboxLayerInterface.getStatus());
-					sendModelMessage(AsyncMvpPresenterProtocol.PUT_STATUS, name, 0, modelHandler.inboxLayerInterface.getStatus());
-				}
+			if (request != null && request.mPayload instanceof Integer) {
+				name = ((Integer) request.mPayload).intValue();
+			}
+			com.hippoapp.asyncmvp.core.LayerStatus status = getLayerStatus(name);
+			if (request != null) {
+				request.reply(name, 0, status);
+			} else if (status != null) {
+				sendViewMessage(AsyncMvpPresenterProtocol.PUT_STATUS, name, 0, status);
+				sendModelMessage(AsyncMvpPresenterProtocol.PUT_STATUS, name, 0, status);
 			}
 			return true;
 		}
@@ -325,7 +624,13 @@ public final class Presenter implements Callback {
 	public interface ModelLayerInterface extends Handler.Callback {
 		public void init(Context context);
 
-		public LayerStatus getStatus();
+		/**
+		 * @deprecated Presenter tracks status of layers itself, see
+		 *             {@link Presenter#getLayerStatus(int)}. This method is not
+		 *             called anymore.
+		 */
+		@Deprecated
+		public com.hippoapp.asyncmvp.core.LayerStatus getStatus();
 	}
 
 	@Target({ ElementType.TYPE })
@@ -334,11 +639,220 @@ public final class Presenter implements Callback {
 		int nameInt() default 0;
 	}
 
-	public class LayerStatus {
-		HashSet<Integer> activeProtocolSet = new HashSet<Integer>();
+	/**
+	 * @deprecated status of layer is {@link com.hippoapp.asyncmvp.core.LayerStatus} now, it is
+	 *             returned by {@link Presenter#getLayerStatus(int)}. This
+	 *             class is kept only for source compatibility of imports and
+	 *             of {@link ModelLayerInterface#getStatus()} implementations.
+	 */
+	@Deprecated
+	public class LayerStatus extends com.hippoapp.asyncmvp.core.LayerStatus {
+		public LayerStatus() {
+			super(0, new int[0], 0, 0, 0, 0, 0, 0, 0, 0, 0, new long[0]);
+		}
+	}
+
+	/**
+	 * Declares protocols which View-component receives when it is subscribed
+	 * by {@link Presenter#subscribe(Callback)}
+	 */
+	@Target({ ElementType.TYPE })
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface ViewProtocols {
+		int[] value();
+	}
+
+	/**
+	 * Immutable index of View-components by protocol. Handlers which receive
+	 * all protocols are included in every protocol entry, order of
+	 * subscription is kept.
+	 */
+	private static final class ViewRegistry {
+		final ViewHandler[] mAll;
+
+		/**
+		 * Handlers without protocol filter
+		 */
+		private final ViewHandler[] mUnfiltered;
+
+		/**
+		 * Sorted protocols which have filtered handlers
+		 */
+		private final int[] mProtocols;
+
+		private final ViewHandler[][] mHandlersByProtocol;
+
+		ViewRegistry(ViewHandler[] all) {
+			mAll = all;
+			List<ViewHandler> unfiltered = new ArrayList<ViewHandler>();
+			TreeSet<Integer> protocols = new TreeSet<Integer>();
+			for (ViewHandler handler : all) {
+				if (handler.mProtocols == null) {
+					unfiltered.add(handler);
+				} else {
+					for (int protocol : handler.mProtocols) {
+						protocols.add(protocol);
+					}
+				}
+			}
+			mUnfiltered = unfiltered.toArray(new ViewHandler[unfiltered.size()]);
+			mProtocols = new int[protocols.size()];
+			mHandlersByProtocol = new ViewHandler[protocols.size()][];
+			int i = 0;
+			for (int protocol : protocols) {
+				List<ViewHandler> handlers = new ArrayList<ViewHandler>();
+				for (ViewHandler handler : all) {
+					if (handler.mProtocols == null || contains(handler.mProtocols, protocol)) {
+						handlers.add(handler);
+					}
+				}
+				mProtocols[i] = protocol;
+				mHandlersByProtocol[i] = handlers.toArray(new ViewHandler[handlers.size()]);
+				++i;
+			}
+		}
+
+		ViewHandler[] handlersFor(int what) {
+			int i = Arrays.binarySearch(mProtocols, what);
+			return i >= 0 ? mHandlersByProtocol[i] : mUnfiltered;
+		}
+
+		private static boolean contains(int[] protocols, int protocol) {
+			for (int p : protocols) {
+				if (p == protocol) {
+					return true;
+				}
+			}
+			return false;
+		}
 	}
 
-	private class ModelHandler extends Handler {
+	/**
+	 * Latest payload of coalesced view protocol. Pending message of view keeps
+	 * slot in {@link Message#obj}.
+	 */
+	private static final class CoalescedSlot {
+		final int mWhat;
+		volatile Payload mLatest;
+
+		CoalescedSlot(int what) {
+			mWhat = what;
+		}
+	}
+
+	private static final class Payload {
+		final int arg1;
+		final int arg2;
+		final Object obj;
+
+		Payload(int arg1, int arg2, Object obj) {
+			this.arg1 = arg1;
+			this.arg2 = arg2;
+			this.obj = obj;
+		}
+	}
+
+	/**
+	 * Pending request, see {@link Presenter#request(int, Object, long, Callback)}.
+	 * Request is answered once: by first reply, by timeout or by cancel.
+	 */
+	public static final class Request {
+		private final int mWhat;
+		private final Object mPayload;
+		private final Handler mHandler;
+		private final AtomicBoolean mCompleted = new AtomicBoolean();
+
+		private final Runnable mTimeoutTask = new Runnable() {
+			@Override
+			public void run() {
+				if (mCompleted.compareAndSet(false, true)) {
+					Message.obtain(mHandler, AsyncMvpPresenterProtocol.REQUEST_TIMEOUT, mWhat, 0, mPayload)
+							.sendToTarget();
+				}
+			}
+		};
+
+		Request(int what, Object payload, Handler handler) {
+			mWhat = what;
+			mPayload = payload;
+			mHandler = handler;
+		}
+
+		/**
+		 * @return protocol of request
+		 */
+		public int getWhat() {
+			return mWhat;
+		}
+
+		/**
+		 * Answer request from any thread.
+		 *
+		 * @return {@code true} if answer is delivered, {@code false} if request
+		 *         is already answered, timed out or cancelled
+		 */
+		public boolean reply(int arg1, int arg2, Object obj) {
+			if (!mCompleted.compareAndSet(false, true)) {
+				return false;
+			}
+			mHandler.removeCallbacks(mTimeoutTask);
+			Message.obtain(mHandler, mWhat, arg1, arg2, obj).sendToTarget();
+			return true;
+		}
+
+		/**
+		 * Forget request, callback receives nothing.
+		 *
+		 * @return {@code false} if request is already completed
+		 */
+		public boolean cancel() {
+			if (!mCompleted.compareAndSet(false, true)) {
+				return false;
+			}
+			mHandler.removeCallbacks(mTimeoutTask);
+			return true;
+		}
+
+		public boolean isCompleted() {
+			return mCompleted.get();
+		}
+	}
+
+	/**
+	 * Handler of View-component. Replaces slot of coalesced protocol by its
+	 * latest payload before message reaches callback.
+	 */
+	private static final class ViewHandler extends Handler {
+		final Callback mCallback;
+
+		/**
+		 * Protocols of View-component, {@code null} means all protocols
+		 */
+		final int[] mProtocols;
+
+		ViewHandler(Callback callback, int[] protocols) {
+			super(callback);
+			mCallback = callback;
+			mProtocols = protocols;
+		}
+
+		@Override
+		public void dispatchMessage(Message msg) {
+			if (msg.obj instanceof CoalescedSlot) {
+				Payload payload = ((CoalescedSlot) msg.obj).mLatest;
+				msg.arg1 = payload.arg1;
+				msg.arg2 = payload.arg2;
+				msg.obj = payload.obj;
+			}
+			super.dispatchMessage(msg);
+		}
+	}
+
+	/**
+	 * Looper backend of {@link DispatchEngine}: runs engine tasks on layer
+	 * thread and turns engine messages into {@link Message} for layer
+	 */
+	private class ModelHandler extends Handler implements Executor, DispatchEngine.Target {
 		int name;
 
 		ModelLayerInterface inboxLayerInterface;
@@ -348,5 +862,23 @@ public final class Presenter implements Callback {
 			name = modelLayerInterface.getClass().getAnnotation(ModelLayer.class).nameInt();
 			this.inboxLayerInterface = modelLayerInterface;
 		}
+
+		@Override
+		public void execute(Runnable command) {
+			post(command);
+		}
+
+		@Override
+		public void dispatch(int what, int arg1, int arg2, Object obj, Object data) {
+			Message message = Message.obtain(this, what, arg1, arg2, obj);
+			if (data != null) {
+				message.setData((Bundle) data);
+			}
+			try {
+				Presenter.dispatch(this, message);
+			} finally {
+				message.recycle();
+			}
+		}
 	}
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.core;
+
+/**
+ * Priority of model message, see
+ * {@link Presenter#sendModelMessage(int, int, int, Object, android.os.Bundle, Priority, long)}
+ *
+ * @author Bnet.Android.Developer.Team
+ */
+public enum Priority {
+	/**
+	 * User-visible work, jumps ahead of other messages
+	 */
+	URGENT,
+	/**
+	 * Default priority
+	 */
+	NORMAL,
+	/**
+	 * Background work like cache warm-up or sync, taken when there is
+	 * nothing else
+	 */
+	LOW
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.http;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import android.util.Log;
+
+import com.hippoapp.asyncmvp.core.ConnectivityMonitor;
+import com.hippoapp.asyncmvp.core.ConnectivityMonitor.OnConnectivityChangedListener;
+
+/**
+ * Adapts concurrency and timeouts of {@link AsyncHttpClient} to current
+ * network. Network type comes from {@link ConnectivityMonitor}, round-trip
+ * time and throughput are measured on completed requests and smoothed like
+ * TCP does it (new sample has weight 1/8).
+ *
+ * <ul>
+ * <li>Connection limit is {@link #DEFAULT_MAX_CONNECTIONS} on Wi-Fi and
+ * Ethernet, {@link #METERED_MAX_CONNECTIONS} on mobile networks and
+ * {@link #SLOW_MAX_CONNECTIONS} when observed throughput is lower than
+ * {@link #SLOW_THROUGHPUT}, so parallel requests don't fight for slow link
+ * <li>Socket and connection timeouts are 4 round-trip times plus 2 seconds,
+ * but not less than {@link #MIN_TIMEOUT} and not more than
+ * {@link #MAX_TIMEOUT}
+ * <li>Prefetch is allowed on connected unmetered networks, or on metered
+ * network with throughput higher than {@link #FAST_THROUGHPUT}
+ * </ul>
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class AdaptiveNetworkController implements OnConnectivityChangedListener {
+
+	private static final String TAG = AdaptiveNetworkController.class.getSimpleName();
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 10;
+	public static final int METERED_MAX_CONNECTIONS = 4;
+	public static final int SLOW_MAX_CONNECTIONS = 2;
+
+	public static final int DEFAULT_TIMEOUT = 10 * 1000;
+	public static final int METERED_TIMEOUT = 20 * 1000;
+	public static final int MIN_TIMEOUT = 5 * 1000;
+	public static final int MAX_TIMEOUT = 30 * 1000;
+
+	/**
+	 * Bytes per second
+	 */
+	public static final long SLOW_THROUGHPUT = 30 * 1024;
+
+	/**
+	 * Bytes per second
+	 */
+	public static final long FAST_THROUGHPUT = 250 * 1024;
+
+	/**
+	 * Smaller responses are dominated by latency and are not used for
+	 * throughput estimation
+	 */
+	private static final int MIN_THROUGHPUT_SAMPLE_BYTES = 8 * 1024;
+
+	private volatile boolean isConnected = true;
+	private volatile boolean isMetered;
+
+	/**
+	 * Smoothed round-trip time in milliseconds, 0 if there are no samples
+	 */
+	private volatile long mRtt;
+
+	/**
+	 * Smoothed throughput in bytes per second, 0 if there are no samples
+	 */
+	private volatile long mThroughput;
+
+	private volatile int mMaxConnections = DEFAULT_MAX_CONNECTIONS;
+	private volatile int mTimeout = DEFAULT_TIMEOUT;
+
+	private ThreadPoolExecutor mThreadPool;
+
+	/**
+	 * @param threadPool
+	 *            - pool which size is adjusted to connection limit, may be
+	 *            {@code null}
+	 */
+	AdaptiveNetworkController(ThreadPoolExecutor threadPool) {
+		mThreadPool = threadPool;
+		ConnectivityMonitor monitor = ConnectivityMonitor.getInst();
+		if (monitor != null) {
+			isConnected = monitor.isConnected();
+			isMetered = monitor.isMetered();
+			// monitor keeps weak reference, controller lives as long as client
+			monitor.addOnConnectivityChangedListener(this);
+		} else {
+			Log.w(TAG, "ConnectivityMonitor is not initialized, limits don't follow network. Use AsyncApplication.");
+		}
+		update();
+	}
+
+	@Override
+	public void onConnectivityChanged(boolean isConnected, int networkType, boolean isMetered) {
+		this.isConnected = isConnected;
+		this.isMetered = isMetered;
+		synchronized (this) {
+			// samples of previous network say nothing about new one
+			mRtt = 0;
+			mThroughput = 0;
+		}
+		update();
+	}
+
+	/**
+	 * Take measurement of completed request into account
+	 *
+	 * @param rttInMillis
+	 *            - time from sending request to receiving response headers
+	 * @param bytes
+	 *            - size of response body
+	 * @param transferTimeInMillis
+	 *            - time of receiving response body
+	 */
+	void onResponse(long rttInMillis, long bytes, long transferTimeInMillis) {
+		synchronized (this) {
+			mRtt = mRtt == 0 ? rttInMillis : mRtt + (rttInMillis - mRtt) / 8;
+			if (bytes >= MIN_THROUGHPUT_SAMPLE_BYTES) {
+				long throughput = bytes * 1000 / Math.max(transferTimeInMillis, 1);
+				mThroughput = mThroughput == 0 ? throughput : mThroughput + (throughput - mThroughput) / 8;
+			}
+		}
+		update();
+	}
+
+	/**
+	 * Set timeouts of current network to parameters of request
+	 */
+	void applyTimeouts(HttpParams params) {
+		int timeout = mTimeout;
+		HttpConnectionParams.setConnectionTimeout(params, timeout);
+		HttpConnectionParams.setSoTimeout(params, timeout);
+	}
+
+	/**
+	 * @param threadPool
+	 *            - pool which size is adjusted to connection limit, may be
+	 *            {@code null}
+	 */
+	synchronized void setThreadPool(ThreadPoolExecutor threadPool) {
+		mThreadPool = threadPool;
+		resizeThreadPool();
+	}
+
+	/**
+	 * @return maximum amount of concurrent requests on current network
+	 */
+	public int getMaxConnections() {
+		return mMaxConnections;
+	}
+
+	/**
+	 * @return socket and connection timeout in milliseconds
+	 */
+	public int getTimeout() {
+		return mTimeout;
+	}
+
+	/**
+	 * @return smoothed round-trip time in milliseconds, 0 if unknown
+	 */
+	public long getRtt() {
+		return mRtt;
+	}
+
+	/**
+	 * @return smoothed throughput in bytes per second, 0 if unknown
+	 */
+	public long getThroughput() {
+		return mThroughput;
+	}
+
+	/**
+	 * @return true if speculative requests are cheap on current network
+	 */
+	public boolean isPrefetchAllowed() {
+		if (!isConnected) {
+			return false;
+		}
+		return !isMetered || mThroughput >= FAST_THROUGHPUT;
+	}
+
+	private synchronized void update() {
+		long throughput = mThroughput;
+		int maxConnections;
+		if (!isConnected) {
+			maxConnections = 1;
+		} else if (throughput != 0 && throughput < SLOW_THROUGHPUT) {
+			maxConnections = SLOW_MAX_CONNECTIONS;
+		} else if (isMetered) {
+			maxConnections = METERED_MAX_CONNECTIONS;
+		} else {
+			maxConnections = DEFAULT_MAX_CONNECTIONS;
+		}
+
+		long rtt = mRtt;
+		int timeout;
+		if (rtt == 0) {
+			timeout = isMetered ? METERED_TIMEOUT : DEFAULT_TIMEOUT;
+		} else {
+			timeout = (int) Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, rtt * 4 + 2000));
+		}
+
+		mTimeout = timeout;
+		if (mMaxConnections != maxConnections) {
+			mMaxConnections = maxConnections;
+			resizeThreadPool();
+		}
+	}
+
+	private void resizeThreadPool() {
+		if (mThreadPool == null) {
+			return;
+		}
+		int size = mMaxConnections;
+		// pool rejects core size bigger than max size
+		if (size > mThreadPool.getMaximumPoolSize()) {
+			mThreadPool.setMaximumPoolSize(size);
+			mThreadPool.setCorePoolSize(size);
+		} else {
+			mThreadPool.setCorePoolSize(size);
+			mThreadPool.setMaximumPoolSize(size);
+		}
+	}
+}
@@ -21,11 +21,14 @@ package com.hippoapp.asyncmvp.http;
 import java.io.IOException;
 import java.net.ConnectException;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpRequestRetryHandler;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.impl.client.AbstractHttpClient;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.EntityUtils;
@@ -54,8 +57,13 @@ class AsyncCachedHttpRequest implements Runnable {
 	private String cacheId;
 	private int cacheProtocol;
 
+	private AdaptiveNetworkController networkController;
+
+	private HttpOutbox outbox;
+
 	public AsyncCachedHttpRequest(AbstractHttpClient client, HttpContext context, HttpUriRequest request,
-			IAsyncHttpResponseHandler responseHandler, int protocol, int cacheProtocol, String cacheId) {
+			IAsyncHttpResponseHandler responseHandler, int protocol, int cacheProtocol, String cacheId,
+			AdaptiveNetworkController networkController, HttpOutbox outbox) {
 		this.client = client;
 		this.context = context;
 		this.request = request;
@@ -65,6 +73,8 @@ class AsyncCachedHttpRequest implements Runnable {
 
 		this.cacheProtocol = cacheProtocol;
 		this.cacheId = cacheId;
+		this.networkController = networkController;
+		this.outbox = outbox;
 
 	}
 
@@ -73,6 +83,16 @@ class AsyncCachedHttpRequest implements Runnable {
 		if (responseHandler != null) {
 			try {
 				responseHandler.onStart(protocol);
+				if (isQueueable()) {
+					bufferBody();
+				}
+				if (isQueueable() && HttpOutbox.isOffline()) {
+					// don't waste retries, request is replayed on connection
+					outbox.enqueue(protocol, request);
+					responseHandler.onFailure(protocol, new HttpOutbox.QueuedException(null));
+					responseHandler.onFinish(protocol);
+					return;
+				}
 				Parcelable parcelable = null;
 				try {
 					parcelable = AsyncCacheClient.getInstance().get(cacheProtocol, cacheId);
@@ -86,12 +106,47 @@ class AsyncCachedHttpRequest implements Runnable {
 				}
 
 			} catch (IOException e) {
-				responseHandler.onFailure(protocol, e);
+				responseHandler.onFailure(protocol, queue(e));
 			}
 			responseHandler.onFinish(protocol);
 		}
 	}
 
+	private boolean isQueueable() {
+		return outbox != null && HttpOutbox.isQueueable(request);
+	}
+
+	/**
+	 * Read body which can be read only once into memory, so it is still
+	 * available for outbox after failed attempt
+	 */
+	private void bufferBody() throws IOException {
+		if (request instanceof HttpEntityEnclosingRequest) {
+			HttpEntityEnclosingRequest enclosingRequest = (HttpEntityEnclosingRequest) request;
+			HttpEntity entity = enclosingRequest.getEntity();
+			if (entity != null && !entity.isRepeatable()) {
+				enclosingRequest.setEntity(new BufferedHttpEntity(entity));
+			}
+		}
+	}
+
+	/**
+	 * Save failed request to outbox if it is possible
+	 *
+	 * @return error which is passed to response handler
+	 */
+	private IOException queue(IOException cause) {
+		if (!isQueueable()) {
+			return cause;
+		}
+		try {
+			outbox.enqueue(protocol, request);
+		} catch (IOException e) {
+			return cause;
+		}
+		return new HttpOutbox.QueuedException(cause);
+	}
+
 	private void makeRequestWithRetries() throws ConnectException {
 		boolean retry = true;
 		IOException cause = null;
@@ -116,13 +171,18 @@ class AsyncCachedHttpRequest implements Runnable {
 	}
 
 	private void makeRequest() throws IOException {
+		long startTime = System.currentTimeMillis();
 		HttpResponse response = client.execute(request, context);
+		long responseTime = System.currentTimeMillis();
 
 		StatusLine status = response.getStatusLine();
 		if (status.getStatusCode() >= 300) {
+			networkController.onResponse(responseTime - startTime, 0, 0);
 			responseHandler.onFailure(protocol, new HttpResponseException(status.getStatusCode(), status.getReasonPhrase()));
 		} else {
 			byte[] httpResponseByte = EntityUtils.toByteArray(response.getEntity());
+			networkController.onResponse(responseTime - startTime, httpResponseByte.length,
+					System.currentTimeMillis() - responseTime);
 			// add to cache
 			ResponseData responseData = new ResponseData(status.getStatusCode(), httpResponseByte);
 			try {
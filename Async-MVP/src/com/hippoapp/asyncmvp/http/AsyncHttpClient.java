@@ -18,15 +18,17 @@
  */
 package com.hippoapp.asyncmvp.http;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.WeakHashMap;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.http.HttpVersion;
 import org.apache.http.client.HttpClient;
@@ -52,6 +54,7 @@ import org.apache.http.protocol.SyncBasicHttpContext;
 import android.content.Context;
 
 import com.hippoapp.asyncmvp.cache.AsyncCacheClient;
+import com.hippoapp.asyncmvp.cache.ResponseDataSerializer;
 
 /**
  * Custom realization of HTTP client. Client is adopted for concurrent requests
@@ -78,6 +81,16 @@ import com.hippoapp.asyncmvp.cache.AsyncCacheClient;
  * <code>ThreadPoolExecutor</code>.
  *
  * <p>
+ * Amount of concurrent requests and timeouts of default thread pool are
+ * adapted to current network by {@link AdaptiveNetworkController}. Use
+ * {@link #isPrefetchAllowed()} before speculative requests.
+ *
+ * <p>
+ * POST requests made offline or failed because of network may be saved to
+ * durable {@link HttpOutbox} and replayed when connection returns, see
+ * {@link #enableOutbox(Context, String)}.
+ *
+ * <p>
  * Simple use of this package:
  * <p>
  *
@@ -158,6 +171,10 @@ public class AsyncHttpClient {
 
 	public static final int HTTP_RESPONSE_CACHE_PROTOCOL = 1;
 
+	private static final String DEFAULT_OUTBOX_NAME = "http_outbox";
+
+	private static final ResponseDataSerializer RESPONSE_DATA_SERIALIZER = new ResponseDataSerializer();
+
 	private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
 	private static int socketTimeout = DEFAULT_SOCKET_TIMEOUT;
 
@@ -165,6 +182,8 @@ public class AsyncHttpClient {
 	private HttpContext httpContext;
 	private ThreadPoolExecutor threadPool;
 	private Map<Context, List<WeakReference<Future>>> requestMap;
+	private AdaptiveNetworkController networkController;
+	private volatile HttpOutbox outbox;
 
 	/**
 	 * Creates a new AsyncHttpClient and configure it with default parameters.
@@ -192,7 +211,10 @@ public class AsyncHttpClient {
 
 		httpClient.setHttpRequestRetryHandler(new RetryHandler());
 
-		threadPool = (ThreadPoolExecutor) Executors.newCachedThreadPool();
+		threadPool = new ThreadPoolExecutor(AdaptiveNetworkController.DEFAULT_MAX_CONNECTIONS,
+				AdaptiveNetworkController.DEFAULT_MAX_CONNECTIONS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+		threadPool.allowCoreThreadTimeOut(true);
+		networkController = new AdaptiveNetworkController(threadPool);
 
 		requestMap = new WeakHashMap<Context, List<WeakReference<Future>>>();
 	}
@@ -217,6 +239,7 @@ public class AsyncHttpClient {
 			int inMemoryCacheMaxConcurrentThreads) {
 		AsyncCacheClient.getInstance().initCacheInstance(HTTP_RESPONSE_CACHE_PROTOCOL, inMemoryCacheInitialCapacity,
 				inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads);
+		AsyncCacheClient.getInstance().setSerializer(HTTP_RESPONSE_CACHE_PROTOCOL, RESPONSE_DATA_SERIALIZER);
 	}
 
 	/**
@@ -245,6 +268,7 @@ public class AsyncHttpClient {
 			int inMemoryCacheMaxConcurrentThreads, int diskCacheExpirationInMinutes, int diskCacheType) throws IOException {
 		AsyncCacheClient.getInstance().initCacheInstance(HTTP_RESPONSE_CACHE_PROTOCOL, inMemoryCacheInitialCapacity,
 				inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads, diskCacheExpirationInMinutes, diskCacheType);
+		AsyncCacheClient.getInstance().setSerializer(HTTP_RESPONSE_CACHE_PROTOCOL, RESPONSE_DATA_SERIALIZER);
 	}
 
 	/**
@@ -269,6 +293,7 @@ public class AsyncHttpClient {
 			int inMemoryCacheMaxConcurrentThreads) {
 		AsyncCacheClient.getInstance().initCacheInstance(protocol, inMemoryCacheInitialCapacity,
 				inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads);
+		AsyncCacheClient.getInstance().setSerializer(protocol, RESPONSE_DATA_SERIALIZER);
 	}
 
 	/**
@@ -299,6 +324,7 @@ public class AsyncHttpClient {
 			int inMemoryCacheMaxConcurrentThreads, int diskCacheExpirationInMinutes, int diskCacheType) throws IOException {
 		AsyncCacheClient.getInstance().initCacheInstance(protocol, inMemoryCacheInitialCapacity,
 				inMemoryCacheExpirationInMinutes, inMemoryCacheMaxConcurrentThreads, diskCacheExpirationInMinutes, diskCacheType);
+		AsyncCacheClient.getInstance().setSerializer(protocol, RESPONSE_DATA_SERIALIZER);
 	}
 
 	public static void clearCache(int protocol) {
@@ -318,10 +344,61 @@ public class AsyncHttpClient {
 		return this.httpClient;
 	}
 
+	/**
+	 * Enables {@link HttpOutbox} for POST requests of this client. Requests
+	 * made offline or failed because of network are saved to application files
+	 * directory and replayed in order when connection returns. Response
+	 * handler gets {@link HttpOutbox.QueuedException} for such requests, the
+	 * result of replay is sent as {@link com.hippoapp.asyncmvp.core.Presenter}
+	 * message with the original protocol.
+	 *
+	 * <p>
+	 * There is one outbox per name in process. Clients which enable outbox
+	 * with the same name share it and its requests are replayed by the client
+	 * which enabled it first. Clients with different configuration (cookies,
+	 * authentication) should use different names.
+	 *
+	 * @param context
+	 *            - context to get files directory
+	 * @param name
+	 *            - name of outbox file
+	 */
+	public synchronized void enableOutbox(Context context, String name) {
+		if (outbox == null) {
+			outbox = HttpOutbox.getInstance(new File(context.getFilesDir(), name), httpClient, httpContext);
+		}
+	}
+
+	/**
+	 * Enables default outbox, see {@link #enableOutbox(Context, String)}
+	 *
+	 * @param context
+	 *            - context to get files directory
+	 */
+	public void enableOutbox(Context context) {
+		enableOutbox(context, DEFAULT_OUTBOX_NAME);
+	}
+
+	/**
+	 * Get controller which adapts concurrency and timeouts to current network.
+	 */
+	public AdaptiveNetworkController getNetworkController() {
+		return this.networkController;
+	}
+
+	/**
+	 * Returns true if speculative requests are cheap on current network, see
+	 * {@link AdaptiveNetworkController#isPrefetchAllowed()}.
+	 */
+	public boolean isPrefetchAllowed() {
+		return this.networkController.isPrefetchAllowed();
+	}
+
 	/**
 	 * Overrides the threadpool implementation used when queuing/pooling
-	 * requests. By default, <code>Executors.newCachedThreadPool()</code> is
-	 * used. If need to make synchronous requests use
+	 * requests. By default, pool which size is adapted to current network by
+	 * {@link AdaptiveNetworkController} is used. Size of custom pool is not
+	 * changed. If need to make synchronous requests use
 	 * <code>Executors.newFixedThreadPool(1)</code>
 	 *
 	 * @param threadPool
@@ -330,6 +407,7 @@ public class AsyncHttpClient {
 	 */
 	public void setThreadPool(ThreadPoolExecutor threadPool) {
 		this.threadPool = threadPool;
+		this.networkController.setThreadPool(null);
 	}
 
 	/**
@@ -485,8 +563,9 @@ public class AsyncHttpClient {
 		if (contentType != null) {
 			uriRequest.addHeader("Content-Type", contentType);
 		}
+		networkController.applyTimeouts(uriRequest.getParams());
 		Future request = threadPool.submit(new AsyncCachedHttpRequest(client, httpContext, uriRequest, responseHandler, protocol,
-				cacheProtocol, cacheId));
+				cacheProtocol, cacheId, networkController, outbox));
 		// TODO if use application context there is no need to check
 		if (context != null) {
 			// Add request to request map
@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import android.os.Message;
+import android.util.Log;
+
+import com.hippoapp.asyncmvp.core.ConnectivityMonitor;
+import com.hippoapp.asyncmvp.core.ConnectivityMonitor.OnConnectivityChangedListener;
+import com.hippoapp.asyncmvp.core.Presenter;
+
+/**
+ * Durable queue of POST requests which were made offline or failed because of
+ * network. Requests are appended to a log file in application files
+ * directory, so they survive process restart, and are replayed in order when
+ * {@link ConnectivityMonitor} reports connection. Result of replayed request is
+ * sent by {@link Presenter#sendModelMessage(int, int, int, Object)} with the
+ * original protocol: in {@link Message#arg1} - HTTP status code, in
+ * {@link Message#obj} - body of response.
+ *
+ * <p>
+ * Request is saved with all its headers, for example authorization and
+ * cookies. Request which failed after it was sent may be processed by server
+ * already, so replay gives at-least-once delivery. Server should tolerate
+ * duplicates.
+ *
+ * <p>
+ * Answer of server is final, except 5xx and 429 (Too Many Requests): such
+ * request stays in outbox and replay is repeated with growing delay, from
+ * {@link #MIN_RETRY_DELAY_IN_MILLIS} to {@link #MAX_RETRY_DELAY_IN_MILLIS}, or
+ * on next connection.
+ *
+ * <p>
+ * All file operations and replays are executed on a single outbox thread, so
+ * order of requests is kept. There is one outbox per file in process, see
+ * {@link #getInstance(File, AbstractHttpClient, HttpContext)}.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public class HttpOutbox implements OnConnectivityChangedListener {
+
+	private static final String TAG = HttpOutbox.class.getSimpleName();
+
+	private static final byte RECORD_REQUEST = 1;
+	private static final byte RECORD_ACK = 2;
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	public static final long MIN_RETRY_DELAY_IN_MILLIS = 30 * 1000;
+	public static final long MAX_RETRY_DELAY_IN_MILLIS = 30 * 60 * 1000;
+
+	private static final int SC_TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * Outboxes by path of file
+	 */
+	private static final Map<String, HttpOutbox> sInstances = new HashMap<String, HttpOutbox>();
+
+	private final File mFile;
+	private final AbstractHttpClient mClient;
+	private final HttpContext mHttpContext;
+
+	/**
+	 * Pending requests by sequence number in order of enqueue. Accessed only
+	 * on outbox thread.
+	 */
+	private final Map<Long, Entry> mPending = new LinkedHashMap<Long, Entry>();
+
+	private long mNextSequence;
+
+	private boolean isRegistered;
+
+	/**
+	 * Delay of next replay after server error, accessed only on outbox thread
+	 */
+	private long mRetryDelay = MIN_RETRY_DELAY_IN_MILLIS;
+
+	/**
+	 * Replay after server error, accessed only on outbox thread
+	 */
+	private ScheduledFuture<?> mRetry;
+
+	private final ScheduledExecutorService mExecutor = Executors
+			.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, TAG);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	private final Runnable mReplayTask = new Runnable() {
+		@Override
+		public void run() {
+			replay();
+		}
+	};
+
+	private HttpOutbox(File file, AbstractHttpClient client, HttpContext httpContext) {
+		mFile = file;
+		mClient = client;
+		mHttpContext = httpContext;
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				load();
+			}
+		});
+		register();
+	}
+
+	/**
+	 * Returns outbox of file, creates it if file has no outbox yet. Two
+	 * outboxes on one file would replay requests of each other.
+	 *
+	 * @param client
+	 *            - client which replays requests, used only when outbox is
+	 *            created
+	 */
+	static synchronized HttpOutbox getInstance(File file, AbstractHttpClient client, HttpContext httpContext) {
+		String path = file.getAbsolutePath();
+		HttpOutbox outbox = sInstances.get(path);
+		if (outbox == null) {
+			outbox = new HttpOutbox(file, client, httpContext);
+			sInstances.put(path, outbox);
+		}
+		return outbox;
+	}
+
+	/**
+	 * Listen to connection once monitor exists. Outbox enabled before monitor
+	 * is initialized registers on next enqueue.
+	 */
+	private synchronized void register() {
+		if (isRegistered) {
+			return;
+		}
+		ConnectivityMonitor monitor = ConnectivityMonitor.getInst();
+		if (monitor == null) {
+			return;
+		}
+		isRegistered = true;
+		// outbox is held by sInstances, weak reference of monitor is enough
+		monitor.addOnConnectivityChangedListener(this);
+		if (monitor.isConnected()) {
+			mExecutor.execute(mReplayTask);
+		}
+	}
+
+	/**
+	 * @return true if request must be queued without trying to execute it
+	 */
+	static boolean isOffline() {
+		ConnectivityMonitor monitor = ConnectivityMonitor.getInst();
+		return monitor != null && !monitor.isConnected();
+	}
+
+	/**
+	 * @return true if request may be queued
+	 */
+	static boolean isQueueable(HttpUriRequest request) {
+		return HttpPost.METHOD_NAME.equals(request.getMethod());
+	}
+
+	/**
+	 * Append request to outbox. Body and headers are copied on caller thread,
+	 * file is written on outbox thread.
+	 *
+	 * @param protocol
+	 *            - protocol of result message
+	 * @param request
+	 *            - POST request
+	 * @throws IOException
+	 *             if body can't be read, for example it is not repeatable and
+	 *             was consumed by failed attempt
+	 */
+	void enqueue(int protocol, HttpUriRequest request) throws IOException {
+		register();
+		byte[] body = null;
+		String contentType = null;
+		if (request instanceof HttpEntityEnclosingRequest) {
+			HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+			if (entity != null) {
+				if (!entity.isRepeatable()) {
+					throw new IOException("Body of request can't be read again, it isn't queued");
+				}
+				body = EntityUtils.toByteArray(entity);
+				Header header = entity.getContentType();
+				contentType = header == null ? null : header.getValue();
+			}
+		}
+		Header[] allHeaders = request.getAllHeaders();
+		String[] headers = new String[allHeaders.length * 2];
+		int headerCount = 0;
+		for (Header header : allHeaders) {
+			String name = header.getName();
+			if (HTTP.CONTENT_TYPE.equalsIgnoreCase(name)) {
+				contentType = header.getValue();
+			} else if (!HTTP.CONTENT_LEN.equalsIgnoreCase(name) && !HTTP.TRANSFER_ENCODING.equalsIgnoreCase(name)) {
+				// length and encoding are set by client for replayed body
+				headers[headerCount++] = name;
+				headers[headerCount++] = header.getValue();
+			}
+		}
+		String[] savedHeaders = new String[headerCount];
+		System.arraycopy(headers, 0, savedHeaders, 0, headerCount);
+		final Entry entry = new Entry(protocol, request.getURI().toString(), contentType, savedHeaders, body);
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				entry.sequence = mNextSequence++;
+				mPending.put(entry.sequence, entry);
+				try {
+					append(entry);
+				} catch (IOException e) {
+					Log.e(TAG, "can't save request, it is kept in memory only", e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void onConnectivityChanged(boolean isConnected, int networkType, boolean isMetered) {
+		if (isConnected) {
+			mExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					// new network, server errors of old one don't count
+					mRetryDelay = MIN_RETRY_DELAY_IN_MILLIS;
+					replay();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Execute pending requests in order. Stops at first network failure,
+	 * remaining requests are replayed on next connection. Stops at server
+	 * error too, then replay is retried after delay.
+	 */
+	private void replay() {
+		if (mRetry != null) {
+			mRetry.cancel(false);
+			mRetry = null;
+		}
+		Iterator<Entry> iterator = mPending.values().iterator();
+		while (iterator.hasNext()) {
+			Entry entry = iterator.next();
+			int statusCode;
+			byte[] response;
+			try {
+				HttpPost post = new HttpPost(entry.uri);
+				for (int i = 0; i < entry.headers.length; i += 2) {
+					post.addHeader(entry.headers[i], entry.headers[i + 1]);
+				}
+				if (entry.body != null) {
+					ByteArrayEntity entity = new ByteArrayEntity(entry.body);
+					entity.setContentType(entry.contentType);
+					post.setEntity(entity);
+				}
+				HttpResponse httpResponse = mClient.execute(post, mHttpContext);
+				statusCode = httpResponse.getStatusLine().getStatusCode();
+				HttpEntity entity = httpResponse.getEntity();
+				response = entity == null ? null : EntityUtils.toByteArray(entity);
+			} catch (IOException e) {
+				Log.w(TAG, "replay is stopped, " + mPending.size() + " requests wait for connection", e);
+				return;
+			} catch (RuntimeException e) {
+				// malformed request, it would block the rest of outbox forever
+				Log.e(TAG, "request to " + entry.uri + " can't be replayed, it is dropped", e);
+				iterator.remove();
+				ack(entry);
+				continue;
+			}
+			if (statusCode >= HttpStatus.SC_INTERNAL_SERVER_ERROR || statusCode == SC_TOO_MANY_REQUESTS) {
+				// server is in trouble, keep order and try later
+				Log.w(TAG, "server answered " + statusCode + ", replay is retried in " + mRetryDelay + " ms");
+				mRetry = mExecutor.schedule(mReplayTask, mRetryDelay, TimeUnit.MILLISECONDS);
+				mRetryDelay = Math.min(mRetryDelay * 2, MAX_RETRY_DELAY_IN_MILLIS);
+				return;
+			}
+			// server answered, replay of error will not help
+			iterator.remove();
+			ack(entry);
+			Presenter presenter = Presenter.getInst();
+			if (presenter != null) {
+				presenter.sendModelMessage(entry.protocol, statusCode, 0, response);
+			}
+		}
+		mRetryDelay = MIN_RETRY_DELAY_IN_MILLIS;
+		if (!mFile.delete() && mFile.exists()) {
+			Log.e(TAG, "can't clear " + mFile);
+		}
+	}
+
+	/**
+	 * Read log, drop acknowledged requests and rewrite log without them. Tail
+	 * of log which was not written completely is dropped.
+	 */
+	private void load() {
+		if (!mFile.exists()) {
+			return;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+			while (true) {
+				byte type = in.readByte();
+				long sequence = in.readLong();
+				if (type == RECORD_REQUEST) {
+					Entry entry = readEntry(in);
+					entry.sequence = sequence;
+					mPending.put(sequence, entry);
+				} else {
+					mPending.remove(sequence);
+				}
+				mNextSequence = Math.max(mNextSequence, sequence + 1);
+			}
+		} catch (EOFException e) {
+			// end of log
+		} catch (IOException e) {
+			Log.e(TAG, "outbox is damaged, rest of it is dropped", e);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		try {
+			compact();
+		} catch (IOException e) {
+			Log.e(TAG, "can't compact outbox", e);
+		}
+	}
+
+	private void compact() throws IOException {
+		File tempFile = new File(mFile.getPath() + TEMP_FILE_SUFFIX);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			for (Entry entry : mPending.values()) {
+				writeEntry(out, entry);
+			}
+		} finally {
+			out.close();
+		}
+		if (!tempFile.renameTo(mFile)) {
+			tempFile.delete();
+			throw new IOException("Can't rename " + tempFile + " to " + mFile);
+		}
+	}
+
+	private void append(Entry entry) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+		try {
+			writeEntry(out, entry);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void ack(Entry entry) {
+		try {
+			appendAck(entry.sequence);
+		} catch (IOException e) {
+			Log.e(TAG, "can't save replay result", e);
+		}
+	}
+
+	private void appendAck(long sequence) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+		try {
+			out.writeByte(RECORD_ACK);
+			out.writeLong(sequence);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+		out.writeByte(RECORD_REQUEST);
+		out.writeLong(entry.sequence);
+		out.writeInt(entry.protocol);
+		out.writeUTF(entry.uri);
+		out.writeBoolean(entry.contentType != null);
+		if (entry.contentType != null) {
+			out.writeUTF(entry.contentType);
+		}
+		out.writeInt(entry.headers.length);
+		for (String header : entry.headers) {
+			out.writeUTF(header);
+		}
+		if (entry.body == null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(entry.body.length);
+			out.write(entry.body);
+		}
+	}
+
+	private static Entry readEntry(DataInputStream in) throws IOException {
+		int protocol = in.readInt();
+		String uri = in.readUTF();
+		String contentType = in.readBoolean() ? in.readUTF() : null;
+		String[] headers = new String[in.readInt()];
+		for (int i = 0; i < headers.length; ++i) {
+			headers[i] = in.readUTF();
+		}
+		int length = in.readInt();
+		byte[] body = null;
+		if (length >= 0) {
+			body = new byte[length];
+			in.readFully(body);
+		}
+		return new Entry(protocol, uri, contentType, headers, body);
+	}
+
+	private static final class Entry {
+		long sequence;
+		final int protocol;
+		final String uri;
+		final String contentType;
+
+		/**
+		 * Names and values of request headers, one after another
+		 */
+		final String[] headers;
+		final byte[] body;
+
+		Entry(int protocol, String uri, String contentType, String[] headers, byte[] body) {
+			this.protocol = protocol;
+			this.uri = uri;
+			this.contentType = contentType;
+			this.headers = headers;
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Passed to {@link IAsyncHttpResponseHandler#onFailure(int, Throwable)}
+	 * when request is saved to outbox. Result of request will come as
+	 * {@link Presenter} message after replay.
+	 */
+	public static class QueuedException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public QueuedException(Throwable cause) {
+			super("Request is queued for replay");
+			if (cause != null) {
+				initCause(cause);
+			}
+		}
+	}
+}
@@ -32,8 +32,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Message;
 
-import com.hippoapp.asyncmvp.core.Presenter;
-import com.hippoapp.asyncmvp.core.Presenter.LayerStatus;
+import com.hippoapp.asyncmvp.core.LayerStatus;
 import com.hippoapp.asyncmvp.core.Presenter.ModelLayer;
 import com.hippoapp.asyncmvp.core.Presenter.ModelLayerInterface;
 import com.hippoapp.asyncmvp.location.base.LastLocationFinder;
@@ -57,7 +56,9 @@ import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
  * <p>
  * User location is coming via protocol
  * {@link PresenterProtocol#P_UPDATE_LOCATION}. The {@link Message} contains an
- * object of type {@link Location} as a {@link Message#obj} parameter.
+ * object of type {@link Location} as a {@link Message#obj} parameter. Fixes of
+ * all providers are fused by {@link LocationFusion}, so only the best fix is
+ * sent and not more often than {@link AsyncMvpConstants#LOCATION_FUSION_INTERVAL}.
  * <p>
  * Send an empty message {@link PresenterProtocol#V_DISABLE_UPDATE_LOCATION}
  * from View to turn off user geo-locating. Usually it gets executed during
@@ -86,6 +87,13 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 
 	private Context mContext;
 
+	/**
+	 * Connection state for which location receivers were switched last time,
+	 * {@code null} if they were not switched yet. Accessed only on layer
+	 * thread.
+	 */
+	private Boolean mReceiversConnectedState;
+
 	@Override
 	public boolean handleMessage(Message msg) {
 		switch (msg.what) {
@@ -97,6 +105,11 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 			break;
 		case V_CONNECTION_STATE:
 			boolean isConnected = (Boolean) msg.obj;
+			if (mReceiversConnectedState != null && mReceiversConnectedState == isConnected) {
+				// only type of network changed, receivers are already switched
+				break;
+			}
+			mReceiversConnectedState = isConnected;
 			PackageManager pm = mContext.getPackageManager();
 
 			ComponentName activeLocationReceiver = new ComponentName(mContext, ActiveLocationChangedReceiver.class);
@@ -116,6 +129,7 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 				pm.setComponentEnabledSetting(passiveLocationReceiver, PackageManager.COMPONENT_ENABLED_STATE_DISABLED,
 						PackageManager.DONT_KILL_APP);
 			}
+			break;
 		default:
 			break;
 		}
@@ -127,6 +141,9 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 	 * onResume
 	 */
 	private void enableLocationUpdates() {
+		// best fix of previous session goes to current subscribers
+		LocationFusion.getInst().reset();
+
 		AsyncTask<Void, Void, Void> findLastLocationTask = new AsyncTask<Void, Void, Void>() {
 			@Override
 			protected Void doInBackground(Void... params) {
@@ -136,9 +153,8 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 				// updates.
 				Location lastKnownLocation = lastLocationFinder.getLastBestLocation(MAX_DISTANCE, System.currentTimeMillis()
 						- MAX_TIME);
-				// send location to view and model
-				Presenter.getInst().sendViewMessage(P_UPDATE_LOCATION, lastKnownLocation);
-				Presenter.getInst().sendModelMessage(P_UPDATE_LOCATION, lastKnownLocation);
+				// fusion sends location to view and model
+				LocationFusion.getInst().offer(lastKnownLocation);
 				return null;
 			}
 		};
@@ -160,6 +176,7 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 	private void disableLocationUpdates() {
 		locationManager.removeUpdates(locationListenerPendingIntent);
 		lastLocationFinder.cancel();
+		LocationFusion.getInst().cancel();
 	}
 
 	/**
@@ -171,9 +188,8 @@ public class GeoLocationClient implements AsyncMvpConstants, ModelLayerInterface
 	protected LocationListener oneShotLastLocationUpdateListener = new LocationListener() {
 		@Override
 		public void onLocationChanged(Location l) {
-			// send location to view and model
-			Presenter.getInst().sendViewMessage(P_UPDATE_LOCATION, l);
-			Presenter.getInst().sendModelMessage(P_UPDATE_LOCATION, l);
+			// fusion sends location to view and model
+			LocationFusion.getInst().offer(l);
 		}
 
 		@Override
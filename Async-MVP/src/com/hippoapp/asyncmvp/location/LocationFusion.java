@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.location;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.hippoapp.asyncmvp.core.Presenter;
+import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
+import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
+
+/**
+ * Fuses location fixes of all sources: one-shot listener of
+ * {@link GeoLocationClient}, active and passive location receivers. Views and
+ * layers receive consolidated {@link AsyncMvpPresenterProtocol#P_UPDATE_LOCATION}
+ * instead of every fix of every provider.
+ *
+ * <p>
+ * Fusion keeps the best fix. A newer fix which is less accurate than the best
+ * is dropped, unless the best is older than {@link #SIGNIFICANT_AGE}. A fix
+ * of the same time or older than the best is taken only if it is more
+ * accurate and not older than {@link #ACCURACY_WINDOW}, so a precise fix of a
+ * slow provider isn't lost when a coarse fix came first. The best fix is sent when it moved further than
+ * min distance or min time passed since last sent fix, and not more often than
+ * once per interval: fix which comes earlier is sent at the end of interval,
+ * if no better fix replaces it. Same sequence of fixes always gives same
+ * updates. When updates are enabled again, call {@link #reset()}, so the best
+ * fix is sent to new subscribers.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public final class LocationFusion implements AsyncMvpConstants, AsyncMvpPresenterProtocol {
+
+	/**
+	 * Best fix older than this is replaced by any newer fix
+	 */
+	public static final long SIGNIFICANT_AGE = 2 * 60 * 1000;
+
+	/**
+	 * More accurate fix replaces the best even if it is older by this time
+	 */
+	public static final long ACCURACY_WINDOW = 30 * 1000;
+
+	private static final LocationFusion sInstance = new LocationFusion();
+
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	private float mMinDistance = LOCATION_FUSION_MIN_DISTANCE;
+	private long mMinTime = LOCATION_FUSION_MIN_TIME;
+	private long mInterval = LOCATION_FUSION_INTERVAL;
+
+	private Location mBest;
+	private Location mLastSent;
+
+	/**
+	 * {@link SystemClock#uptimeMillis()} of last update, 0 if there were no
+	 * updates
+	 */
+	private long mLastSentTime;
+
+	private boolean isSendScheduled;
+
+	private final Runnable mSendTask = new Runnable() {
+		@Override
+		public void run() {
+			Location location;
+			synchronized (LocationFusion.this) {
+				isSendScheduled = false;
+				location = takeIfDue(SystemClock.uptimeMillis());
+			}
+			send(location);
+		}
+	};
+
+	private LocationFusion() {
+	}
+
+	public static LocationFusion getInst() {
+		return sInstance;
+	}
+
+	/**
+	 * Set gates of updates
+	 *
+	 * @param minDistance
+	 *            - distance in meters from last update, fix which is closer
+	 *            is sent only when min time passes
+	 * @param minTime
+	 *            - time in milliseconds after which fix is sent even when user
+	 *            doesn't move
+	 * @param interval
+	 *            - minimum time in milliseconds between updates
+	 */
+	public synchronized void setGates(float minDistance, long minTime, long interval) {
+		mMinDistance = minDistance;
+		mMinTime = minTime;
+		mInterval = interval;
+	}
+
+	/**
+	 * Offer fix of any provider. Safe to call from any thread.
+	 *
+	 * @param location
+	 *            - fix, {@code null} is ignored
+	 */
+	public void offer(Location location) {
+		if (location == null) {
+			return;
+		}
+		Location due;
+		synchronized (this) {
+			if (!isBetter(location, mBest)) {
+				return;
+			}
+			mBest = location;
+			long now = SystemClock.uptimeMillis();
+			due = takeIfDue(now);
+			if (due == null && mBest != mLastSent && !isSendScheduled && isWorthSending(mBest)) {
+				isSendScheduled = true;
+				mHandler.postAtTime(mSendTask, mLastSentTime + mInterval);
+			}
+		}
+		send(due);
+	}
+
+	/**
+	 * @return the best fix so far or {@code null}
+	 */
+	public synchronized Location getBest() {
+		return mBest;
+	}
+
+	/**
+	 * Forget scheduled update, for example when location updates are
+	 * disabled. The best fix is kept.
+	 */
+	public synchronized void cancel() {
+		mHandler.removeCallbacks(mSendTask);
+		isSendScheduled = false;
+	}
+
+	/**
+	 * Forget last update and send the best fix again, for example when
+	 * location updates are enabled again. Without reset the kept best fix
+	 * isn't sent, and last known fix of the same age is not better than it.
+	 */
+	public void reset() {
+		Location due;
+		synchronized (this) {
+			mHandler.removeCallbacks(mSendTask);
+			isSendScheduled = false;
+			mLastSent = null;
+			mLastSentTime = 0;
+			due = mBest == null ? null : takeIfDue(SystemClock.uptimeMillis());
+		}
+		send(due);
+	}
+
+	/**
+	 * @return best fix if it must be sent now
+	 */
+	private Location takeIfDue(long now) {
+		if (mBest == mLastSent || !isWorthSending(mBest)) {
+			return null;
+		}
+		if (mLastSentTime != 0 && now - mLastSentTime < mInterval) {
+			return null;
+		}
+		mLastSent = mBest;
+		mLastSentTime = now;
+		return mBest;
+	}
+
+	private boolean isWorthSending(Location location) {
+		if (mLastSent == null) {
+			return true;
+		}
+		return location.getTime() - mLastSent.getTime() >= mMinTime || location.distanceTo(mLastSent) >= mMinDistance;
+	}
+
+	private static boolean isBetter(Location location, Location best) {
+		if (best == null) {
+			return true;
+		}
+		long timeDelta = location.getTime() - best.getTime();
+		if (timeDelta <= 0) {
+			// same or older fix, for example of another provider
+			return timeDelta >= -ACCURACY_WINDOW && accuracyOf(location) < accuracyOf(best);
+		}
+		return timeDelta > SIGNIFICANT_AGE || accuracyOf(location) <= accuracyOf(best);
+	}
+
+	private static float accuracyOf(Location location) {
+		return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+	}
+
+	private static void send(Location location) {
+		Presenter presenter = Presenter.getInst();
+		if (location != null && presenter != null) {
+			// send location to view and model
+			presenter.sendViewMessage(P_UPDATE_LOCATION, location);
+			presenter.sendModelMessage(P_UPDATE_LOCATION, location);
+		}
+	}
+}
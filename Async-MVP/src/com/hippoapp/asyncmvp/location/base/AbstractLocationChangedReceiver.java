@@ -21,7 +21,7 @@ package com.hippoapp.asyncmvp.location.base;
 import android.content.BroadcastReceiver;
 import android.location.Location;
 
-import com.hippoapp.asyncmvp.core.Presenter;
+import com.hippoapp.asyncmvp.location.LocationFusion;
 import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
 import com.hippoapp.asyncmvp.utils.AsyncMvpPresenterProtocol;
 
@@ -30,10 +30,7 @@ public abstract class AbstractLocationChangedReceiver extends BroadcastReceiver
 	private static final String TAG = AbstractLocationChangedReceiver.class.getSimpleName();
 
 	protected void sendLocation(Location location) {
-		if (location != null) {
-			// send location to view and model
-			Presenter.getInst().sendViewMessage(P_UPDATE_LOCATION, location);
-			Presenter.getInst().sendModelMessage(P_UPDATE_LOCATION, location);
-		}
+		// fusion sends location to view and model
+		LocationFusion.getInst().offer(location);
 	}
 }
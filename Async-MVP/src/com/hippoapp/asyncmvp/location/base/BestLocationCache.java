@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2010-2011 Bnet.inc (http://bnet.su)
+ *
+ * This file is part of AsyncMvp.
+ *
+ * AsyncMvp is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * AsyncMvp is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with AsyncMvp.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.hippoapp.asyncmvp.location.base;
+
+import java.util.List;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.SharedPreferences.OnSharedPreferenceChangeListener;
+import android.location.Location;
+import android.location.LocationManager;
+import android.os.SystemClock;
+
+import com.hippoapp.asyncmvp.utils.AsyncMvpConstants;
+
+/**
+ * Process-wide cache of last known locations of every provider and of
+ * location which was used last time.
+ *
+ * <p>
+ * Location receivers update cache with every fix they get, so reads don't ask
+ * {@link LocationManager}: they scan a few cached fixes, one per provider.
+ * Providers are scanned again not more often than {@link #RESCAN_PERIOD} to
+ * catch fixes which receivers didn't see.
+ *
+ * <p>
+ * Last used location is read from preferences once and kept in memory, it is
+ * reloaded only when its preferences change.
+ *
+ * @author Bnet.Android.Developer.Team
+ *
+ */
+public final class BestLocationCache implements AsyncMvpConstants {
+
+	/**
+	 * Period in milliseconds after which providers are scanned again
+	 */
+	public static final long RESCAN_PERIOD = 60 * 1000;
+
+	private static volatile BestLocationCache sInstance;
+
+	private final LocationManager mLocationManager;
+	private final SharedPreferences mPreferences;
+
+	private List<String> mProviders;
+
+	/**
+	 * Last fix of every provider, replaced on change
+	 */
+	private volatile Location[] mLocations = new Location[0];
+
+	/**
+	 * {@link SystemClock#uptimeMillis()} of last scan, 0 if providers were not
+	 * scanned yet
+	 */
+	private volatile long mLastScanTime;
+
+	/**
+	 * {@code null} until preferences are read
+	 */
+	private volatile LastUsed mLastUsed;
+
+	/**
+	 * Preferences keep listener in weak reference, so it is a field
+	 */
+	private final OnSharedPreferenceChangeListener mPreferenceListener = new OnSharedPreferenceChangeListener() {
+		@Override
+		public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+			if (SP_KEY_LAST_LIST_UPDATE_TIME.equals(key) || SP_KEY_LAST_LIST_UPDATE_LAT.equals(key)
+					|| SP_KEY_LAST_LIST_UPDATE_LNG.equals(key)) {
+				mLastUsed = null;
+			}
+		}
+	};
+
+	private BestLocationCache(Context context) {
+		mLocationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+		mPreferences = context.getSharedPreferences(SHARED_PREFERENCE_FILE, Context.MODE_PRIVATE);
+		mPreferences.registerOnSharedPreferenceChangeListener(mPreferenceListener);
+	}
+
+	public static BestLocationCache getInst(Context context) {
+		if (sInstance == null) {
+			synchronized (BestLocationCache.class) {
+				if (sInstance == null) {
+					sInstance = new BestLocationCache(context.getApplicationContext());
+				}
+			}
+		}
+		return sInstance;
+	}
+
+	/**
+	 * Remember fix if it is newer than cached fix of its provider
+	 *
+	 * @param location
+	 *            - fix, {@code null} is ignored
+	 */
+	public synchronized void update(Location location) {
+		if (location == null) {
+			return;
+		}
+		Location[] locations = mLocations;
+		String provider = location.getProvider();
+		for (int i = 0; i < locations.length; ++i) {
+			if (provider == null ? locations[i].getProvider() == null : provider.equals(locations[i].getProvider())) {
+				if (location.getTime() > locations[i].getTime()) {
+					Location[] newLocations = locations.clone();
+					newLocations[i] = location;
+					mLocations = newLocations;
+				}
+				return;
+			}
+		}
+		Location[] newLocations = new Location[locations.length + 1];
+		System.arraycopy(locations, 0, newLocations, 0, locations.length);
+		newLocations[locations.length] = location;
+		mLocations = newLocations;
+	}
+
+	/**
+	 * @return last fix of every provider
+	 */
+	public Location[] getLocations() {
+		long lastScanTime = mLastScanTime;
+		if (lastScanTime == 0 || SystemClock.uptimeMillis() - lastScanTime > RESCAN_PERIOD) {
+			scan();
+		}
+		return mLocations;
+	}
+
+	/**
+	 * @return time of last used location or {@link Long#MIN_VALUE} if there
+	 *         is no such location
+	 */
+	public long getLastUsedTime() {
+		return getLastUsed().time;
+	}
+
+	/**
+	 * @return last used location, never {@code null}
+	 */
+	public Location getLastUsedLocation() {
+		return getLastUsed().location;
+	}
+
+	/**
+	 * Remember location which is used now, for example to get a listing
+	 */
+	public void setLastUsed(Location location, long time) {
+		long lat = (long) location.getLatitude();
+		long lng = (long) location.getLongitude();
+		mPreferences.edit().putLong(SP_KEY_LAST_LIST_UPDATE_TIME, time).putLong(SP_KEY_LAST_LIST_UPDATE_LAT, lat)
+				.putLong(SP_KEY_LAST_LIST_UPDATE_LNG, lng).commit();
+		mLastUsed = new LastUsed(time, lat, lng);
+	}
+
+	private LastUsed getLastUsed() {
+		LastUsed lastUsed = mLastUsed;
+		if (lastUsed == null) {
+			lastUsed = new LastUsed(mPreferences.getLong(SP_KEY_LAST_LIST_UPDATE_TIME, Long.MIN_VALUE),
+					mPreferences.getLong(SP_KEY_LAST_LIST_UPDATE_LAT, Long.MIN_VALUE), mPreferences.getLong(
+							SP_KEY_LAST_LIST_UPDATE_LNG, Long.MIN_VALUE));
+			mLastUsed = lastUsed;
+		}
+		return lastUsed;
+	}
+
+	private synchronized void scan() {
+		long now = SystemClock.uptimeMillis();
+		if (mLastScanTime != 0 && now - mLastScanTime <= RESCAN_PERIOD) {
+			// other thread has just scanned
+			return;
+		}
+		if (mProviders == null) {
+			mProviders = mLocationManager.getAllProviders();
+		}
+		for (String provider : mProviders) {
+			update(mLocationManager.getLastKnownLocation(provider));
+		}
+		mLastScanTime = now;
+	}
+
+	/**
+	 * Immutable tuple of last used location
+	 */
+	private static final class LastUsed {
+		final long time;
+		final Location location;
+
+		LastUsed(long time, long lat, long lng) {
+			this.time = time;
+			location = new Location(CONSTRUCTED_LOCATION_PROVIDER);
+			location.setLatitude(lat);
+			location.setLongitude(lng);
+		}
+	}
+}
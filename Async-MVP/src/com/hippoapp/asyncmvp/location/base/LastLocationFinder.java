@@ -16,8 +16,6 @@
 
 package com.hippoapp.asyncmvp.location.base;
 
-import java.util.List;
-
 import android.content.Context;
 import android.location.Location;
 import android.location.LocationListener;
@@ -39,11 +37,13 @@ public abstract class LastLocationFinder {
 
 	protected LocationManager locationManager;
 	protected Context context;
+	protected BestLocationCache bestLocationCache;
 
 	protected LastLocationFinder(Context context) {
 		this.context = context;
 		locationManager = (LocationManager) context
 				.getSystemService(Context.LOCATION_SERVICE);
+		bestLocationCache = BestLocationCache.getInst(context);
 	}
 
 	/**
@@ -78,25 +78,22 @@ public abstract class LastLocationFinder {
 	protected Location getBestLocationResult(float bestAccuracy, long bestTime,
 			long minTime) {
 		Location bestResult = null;
-		// Iterate through all the providers on the system, keeping
-		// note of the most accurate result within the acceptable time limit.
-		// If no result is found within maxTime, return the newest Location.
-		List<String> matchingProviders = locationManager.getAllProviders();
-		for (String provider : matchingProviders) {
-			Location location = locationManager.getLastKnownLocation(provider);
-			if (location != null) {
-				float accuracy = location.getAccuracy();
-				long time = location.getTime();
+		// Iterate through last locations of all the providers on the system,
+		// keeping note of the most accurate result within the acceptable time
+		// limit. If no result is found within maxTime, return the newest
+		// Location. Locations are cached, see BestLocationCache.
+		for (Location location : bestLocationCache.getLocations()) {
+			float accuracy = location.getAccuracy();
+			long time = location.getTime();
 
-				if ((time < minTime && accuracy < bestAccuracy)) {
-					bestResult = location;
-					bestAccuracy = accuracy;
-					bestTime = time;
-				} else if (time > minTime && bestAccuracy == Float.MAX_VALUE
-						&& time < bestTime) {
-					bestResult = location;
-					bestTime = time;
-				}
+			if ((time < minTime && accuracy < bestAccuracy)) {
+				bestResult = location;
+				bestAccuracy = accuracy;
+				bestTime = time;
+			} else if (time > minTime && bestAccuracy == Float.MAX_VALUE
+					&& time < bestTime) {
+				bestResult = location;
+				bestTime = time;
 			}
 		}
 
@@ -22,6 +22,7 @@ import android.location.Location;
 import android.location.LocationManager;
 
 import com.hippoapp.asyncmvp.location.base.AbstractLocationChangedReceiver;
+import com.hippoapp.asyncmvp.location.base.BestLocationCache;
 
 /**
  * This Receiver class is used to listen for Broadcast Intents that announce
@@ -46,7 +47,8 @@ public class ActiveLocationChangedReceiver extends
 
 		if (intent.hasExtra(locationKey)) {
 			Location location = (Location) intent.getExtras().get(locationKey);
+			BestLocationCache.getInst(context).update(location);
 			sendLocation(location);
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
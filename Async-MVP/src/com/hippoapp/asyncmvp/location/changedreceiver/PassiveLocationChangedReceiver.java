@@ -18,11 +18,11 @@ package com.hippoapp.asyncmvp.location.changedreceiver;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.location.Location;
 import android.location.LocationManager;
 
 import com.hippoapp.asyncmvp.location.base.AbstractLocationChangedReceiver;
+import com.hippoapp.asyncmvp.location.base.BestLocationCache;
 import com.hippoapp.asyncmvp.location.finder.LegacyLastLocationFinder;
 
 /**
@@ -37,6 +37,21 @@ public class PassiveLocationChangedReceiver extends
 	protected static String TAG = PassiveLocationChangedReceiver.class
 			.getSimpleName();
 
+	/**
+	 * Finder is shared by all broadcasts, receiver instance lives for one
+	 * broadcast only
+	 */
+	private static LegacyLastLocationFinder sLastLocationFinder;
+
+	private static synchronized LegacyLastLocationFinder getLastLocationFinder(
+			Context context) {
+		if (sLastLocationFinder == null) {
+			sLastLocationFinder = new LegacyLastLocationFinder(
+					context.getApplicationContext());
+		}
+		return sLastLocationFinder;
+	}
+
 	/**
 	 * When a new location is received, extract it from the Intent and use it to
 	 * start the Service used to update the list of nearby places.
@@ -53,6 +68,7 @@ public class PassiveLocationChangedReceiver extends
 			// location
 			// directly.
 			location = (Location) intent.getExtras().get(key);
+			BestLocationCache.getInst(context).update(location);
 		} else {
 			// This update came from a recurring alarm. We need to determine if
 			// there
@@ -60,23 +76,14 @@ public class PassiveLocationChangedReceiver extends
 			// we used.
 
 			// Get the best last location detected from the providers.
-			LegacyLastLocationFinder lastLocationFinder = new LegacyLastLocationFinder(
-					context);
-			location = lastLocationFinder.getLastBestLocation(MAX_DISTANCE,
-					System.currentTimeMillis() - MAX_TIME);
-			SharedPreferences prefs = context.getSharedPreferences(
-					SHARED_PREFERENCE_FILE, Context.MODE_PRIVATE);
+			location = getLastLocationFinder(context).getLastBestLocation(
+					MAX_DISTANCE, System.currentTimeMillis() - MAX_TIME);
+			BestLocationCache bestLocationCache = BestLocationCache
+					.getInst(context);
 
 			// Get the last location we used to get a listing.
-			long lastTime = prefs.getLong(SP_KEY_LAST_LIST_UPDATE_TIME,
-					Long.MIN_VALUE);
-			long lastLat = prefs.getLong(SP_KEY_LAST_LIST_UPDATE_LAT,
-					Long.MIN_VALUE);
-			long lastLng = prefs.getLong(SP_KEY_LAST_LIST_UPDATE_LNG,
-					Long.MIN_VALUE);
-			Location lastLocation = new Location(CONSTRUCTED_LOCATION_PROVIDER);
-			lastLocation.setLatitude(lastLat);
-			lastLocation.setLongitude(lastLng);
+			long lastTime = bestLocationCache.getLastUsedTime();
+			Location lastLocation = bestLocationCache.getLastUsedLocation();
 
 			// Check if the last location detected from the providers is either
 			// too soon, or too close to the last
@@ -84,7 +91,8 @@ public class PassiveLocationChangedReceiver extends
 			// location to null to prevent the update
 			// Service being run unnecessarily (and spending battery on data
 			// transfers).
-			if ((lastTime > System.currentTimeMillis() - MAX_TIME)
+			if (location == null
+					|| (lastTime > System.currentTimeMillis() - MAX_TIME)
 					|| (lastLocation.distanceTo(location) < MAX_DISTANCE)) {
 				location = null;
 			}
@@ -92,4 +100,4 @@ public class PassiveLocationChangedReceiver extends
 
 		sendLocation(location);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -122,6 +122,10 @@ public class GingerbreadLastLocationFinder extends LastLocationFinder {
 				String key = LocationManager.KEY_LOCATION_CHANGED;
 				Location location = (Location) intent.getExtras().get(key);
 
+				if (location != null) {
+					// next search finds the fix without rescan of providers
+					bestLocationCache.update(location);
+				}
 				if (locationListener != null && location != null) {
 					locationListener.onLocationChanged(location);
 				}
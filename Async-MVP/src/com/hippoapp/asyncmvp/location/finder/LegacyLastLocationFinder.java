@@ -106,6 +106,10 @@ public class LegacyLastLocationFinder extends LastLocationFinder {
 	protected LocationListener singeUpdateListener = new LocationListener() {
 		@Override
 		public void onLocationChanged(Location location) {
+			if (location != null) {
+				// next search finds the fix without rescan of providers
+				bestLocationCache.update(location);
+			}
 			if (locationListener != null && location != null) {
 				locationListener.onLocationChanged(location);
 			}
@@ -52,5 +52,13 @@ public interface AsyncMvpConstants {
 	// The location update time for passive updates
 	long PASSIVE_MAX_TIME = MAX_TIME;
 
+	// Fixes closer than this distance in meters to the last sent fix are
+	// not sent until min time passes
+	int LOCATION_FUSION_MIN_DISTANCE = 10;
+	// Time after which fix is sent even if user doesn't move
+	long LOCATION_FUSION_MIN_TIME = 60 * 1000;
+	// Minimum time between location updates sent to views and layers
+	long LOCATION_FUSION_INTERVAL = 1000;
+
 	int LAYER_MODEL_GEO_LOCATION_NAME = 200;
 }
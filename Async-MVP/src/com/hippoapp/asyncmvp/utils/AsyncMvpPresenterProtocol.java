@@ -21,7 +21,7 @@ package com.hippoapp.asyncmvp.utils;
 import android.location.Location;
 import android.os.Message;
 
-import com.hippoapp.asyncmvp.core.Presenter.LayerStatus;
+import com.hippoapp.asyncmvp.core.LayerStatus;
 
 /**
  * List of framework protocols. Your own list must extends this interface for
@@ -30,13 +30,31 @@ import com.hippoapp.asyncmvp.core.Presenter.LayerStatus;
  */
 public interface AsyncMvpPresenterProtocol {
 
-	// в arg1 sends nameInt of model module
+	// в arg1 sends nameInt of model module. As request payload is Integer
+	// nameInt and answer is LayerStatus
 	public int GET_STATUS = -1;
 	/**
 	 * return {@link LayerStatus} of model module: in {@link Message#obj}; in
 	 * {@link Message#arg1} - nameInt of module
 	 */
 	public int PUT_STATUS = -2;
+	/**
+	 * Inbox of model layer is full, senders should slow down. In
+	 * {@link Message#arg1} - nameInt of layer
+	 */
+	public int LAYER_SATURATED = -3;
+	/**
+	 * Saturated inbox of model layer is drained to half of capacity. In
+	 * {@link Message#arg1} - nameInt of layer
+	 */
+	public int LAYER_RELEASED = -4;
+	/**
+	 * Request is not answered in time, see
+	 * {@link com.hippoapp.asyncmvp.core.Presenter#request(int, Object, long, android.os.Handler.Callback)}
+	 * . In {@link Message#arg1} - protocol of request, in {@link Message#obj}
+	 * - payload of request
+	 */
+	public int REQUEST_TIMEOUT = -5;
 
 	/**
 	 * Empty message of activating GeoLocationModule
@@ -53,6 +71,15 @@ public interface AsyncMvpPresenterProtocol {
 	 */
 	int V_DISABLE_UPDATE_LOCATION = 102;
 
+	/**
+	 * Connection state is changed. Return {@link Boolean} state in
+	 * {@link Message#obj}, network type in {@link Message#arg1}, 1 in
+	 * {@link Message#arg2} if network is metered. See
+	 * {@link com.hippoapp.asyncmvp.core.ConnectivityMonitor}.
+	 */
 	int V_CONNECTION_STATE = 103;
+	/**
+	 * Same as {@link AsyncMvpPresenterProtocol#V_CONNECTION_STATE}
+	 */
 	int P_CONNECTION_STATE = 104;
 }